@@ -1,6 +1,7 @@
 package consensus.nodes;
 
 import consensus.transaction.Candidate;
+import consensus.transaction.Messages;
 import consensus.transaction.Transaction;
 import org.apache.log4j.Logger;
 
@@ -19,9 +20,18 @@ public class CompliantNode implements Node {
     /** The probability that each of the initial valid transactions will be communicated */
     private double pTxDistribution;
 
-    private boolean[] followees;
+    /** Ascending indices of the nodes this node follows */
+    private int[] followees;
     private int numberOfFollowees;
-    private HashMap<Transaction, Set<Integer>> pendingTransactions;
+
+    /**
+     * Pending transactions in an open addressing table keyed by the transaction id. The proposers of
+     * {@code pendingIds[slot]} are the bits set in {@code proposers[slot]}, bit {@code f} standing for
+     * {@code followees[f]}; a slot is free if its proposers are null.
+     */
+    private int[] pendingIds;
+    private BitSet[] proposers;
+    private int numberOfPending;
 
     /**
      * Build compliant node
@@ -34,49 +44,60 @@ public class CompliantNode implements Node {
 
         this.pMalicious = pMalicious;
         this.pTxDistribution = pTxDistribution;
-        this.pendingTransactions = new HashMap<>();
+        this.pendingIds = new int[16];
+        this.proposers = new BitSet[16];
     }
 
     /** {@code followees[i]} is true if and only if this node follows node {@code i} */
     @Override
     public void setFollowees(boolean[] followees) {
 
-        this.followees = followees;
-
-        this.numberOfFollowees = 0;
+        int numberOfFollowees = 0;
         for (boolean followee : followees) {
 
-            if (followee) this.numberOfFollowees++;
+            if (followee) numberOfFollowees++;
+        }
+
+        int[] indices = new int[numberOfFollowees];
+        for (int node = 0, n = 0; node < followees.length; node++) {
+
+            if (followees[node]) indices[n++] = node;
         }
+        this.setFollowees(indices, followees.length);
     }
 
     /**
-     * Check is node can be trusted
+     * @param followees Ascending indices of the nodes this node follows
+     * @param numNodes Number of nodes in the network
+     */
+    @Override
+    public void setFollowees(int[] followees, int numNodes) {
+
+        this.followees = followees;
+        this.numberOfFollowees = followees.length;
+    }
+
+    /**
+     * Position of a node in the followees
      * @param node Node index
-     * @return True if node is trusted, otherwise false
+     * @return Position of the node, negative if it is not trusted
      */
-    private boolean isTrustedNode(int node) {
+    private int followeePosition(int node) {
 
-        return node <= this.followees.length &&
-                this.followees[node];
+        return Arrays.binarySearch(this.followees, node);
     }
 
     /** Initialize proposal list of transactions */
     @Override
     public void setPendingTransaction(Set<Transaction> pendingTransactions) {
 
-        Set<Integer> nodes = new HashSet<>();
-        for (int node = 0; node < followees.length; node++) {
-
-            if(followees[node]) {
-
-                nodes.add(node);
-            }
-        }
-        this.pendingTransactions.clear();
+        Arrays.fill(this.pendingIds, 0);
+        Arrays.fill(this.proposers, null);
+        this.numberOfPending = 0;
         for (Transaction tx: pendingTransactions) {
 
-            this.pendingTransactions.put(tx, nodes);
+            // Every followee is taken to propose the initial transactions
+            this.getProposers(tx.getId()).set(0, this.numberOfFollowees);
         }
     }
 
@@ -88,18 +109,28 @@ public class CompliantNode implements Node {
     public Set<Transaction> sendToFollowers() {
 
         Set<Transaction> consensus = new HashSet<>();
-        // Push all transactions into the pending transactions that this node believes consensus on
-        for (Transaction tx: this.pendingTransactions.keySet()) {
+        int[] pendingIds = this.pendingIds;
+        BitSet[] proposers = this.proposers;
+        this.pendingIds = new int[pendingIds.length];
+        this.proposers = new BitSet[proposers.length];
+        this.numberOfPending = 0;
 
-            int numberOfNodesProposingTransaction = pendingTransactions.get(tx).size();
-            if(numberOfNodesProposingTransaction >= pTxDistribution * (1 - pMalicious) * numberOfFollowees) {
+        // Push all transactions into the pending transactions that this node believes consensus on,
+        // the others are carried over into the emptied table
+        for (int slot = 0; slot < proposers.length; slot++) {
 
-                consensus.add(tx);
+            if (proposers[slot] == null) {
+                continue;
             }
-        }
+            int numberOfNodesProposingTransaction = proposers[slot].cardinality();
+            if(numberOfNodesProposingTransaction >= pTxDistribution * (1 - pMalicious) * numberOfFollowees) {
+
+                consensus.add(new Transaction(pendingIds[slot]));
 
-        for (Transaction tx: consensus) {
-            pendingTransactions.remove(tx);
+            } else {
+
+                this.put(pendingIds[slot], proposers[slot]);
+            }
         }
         return consensus;
     }
@@ -111,27 +142,105 @@ public class CompliantNode implements Node {
     @Override
     public void receiveFromFollowees(Set<Candidate> candidates) {
 
-        // For each candidate save the index of the node that sent it
         for (Candidate candidate: candidates) {
 
-            // Node proposing the transaction
-            int sender = candidate.getSender();
-            // Transaction being proposed
-            Transaction tx = candidate.getTx();
+            this.receive(candidate.getTx().getId(), candidate.getSender());
+        }
+    }
+
+    /**
+     * Each node receives candidates from its followees, packed as in {@link Messages}
+     * @param messages Buffer of packed messages
+     * @param from Index of the first message
+     * @param to Index one past the last message
+     */
+    @Override
+    public void receiveFromFollowees(long[] messages, int from, int to) {
+
+        for (int m = from; m < to; m++) {
 
-            if(!this.isTrustedNode(sender)){
+            this.receive(Messages.getTxId(messages[m]), Messages.getSender(messages[m]));
+        }
+    }
 
-                logger.warn(String.format("Node %d is no trusted as it is not in the list of followees", sender));
-                continue;
+    /**
+     * Save the index of the node that sent a candidate
+     * @param txId Id of the transaction being proposed
+     * @param sender Node proposing the transaction
+     */
+    private void receive(int txId, int sender) {
+
+        int position = this.followeePosition(sender);
+        if(position < 0){
+
+            logger.warn(String.format("Node %d is no trusted as it is not in the list of followees", sender));
+            return;
+        }
+        this.getProposers(txId).set(position);
+    }
+
+    /**
+     * @param txId Id of a transaction
+     * @return Proposers of the transaction, added as pending without proposers if it is not pending yet
+     */
+    private BitSet getProposers(int txId) {
+
+        int slot = this.slot(txId);
+        if (this.proposers[slot] == null) {
+
+            if (2 * (this.numberOfPending + 1) > this.proposers.length) {
+
+                this.grow();
+                slot = this.slot(txId);
             }
+            this.pendingIds[slot] = txId;
+            this.proposers[slot] = new BitSet(this.numberOfFollowees);
+            this.numberOfPending++;
+        }
+        return this.proposers[slot];
+    }
 
-            if(this.pendingTransactions.containsKey(tx)) {
+    /**
+     * Add a transaction that is not pending yet
+     * @param txId Id of the transaction
+     * @param proposers Proposers of the transaction
+     */
+    private void put(int txId, BitSet proposers) {
 
-                this.pendingTransactions.get(tx).add(sender);
+        int slot = this.slot(txId);
+        this.pendingIds[slot] = txId;
+        this.proposers[slot] = proposers;
+        this.numberOfPending++;
+    }
 
-            } else {
+    /**
+     * Linear probing from the mixed transaction id, the table is never more than half full
+     * @param txId Id of a transaction
+     * @return Slot of the transaction, or the free slot it would be stored at
+     */
+    private int slot(int txId) {
+
+        int mask = this.proposers.length - 1;
+        int hash = txId * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (this.proposers[slot] != null && this.pendingIds[slot] != txId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Double the capacity of the pending table */
+    private void grow() {
+
+        int[] pendingIds = this.pendingIds;
+        BitSet[] proposers = this.proposers;
+        this.pendingIds = new int[2 * pendingIds.length];
+        this.proposers = new BitSet[2 * proposers.length];
+        this.numberOfPending = 0;
+        for (int slot = 0; slot < proposers.length; slot++) {
 
-                this.pendingTransactions.put(tx, new HashSet<>(Collections.singletonList(sender)));
+            if (proposers[slot] != null) {
+                this.put(pendingIds[slot], proposers[slot]);
             }
         }
     }
@@ -3,7 +3,7 @@ package consensus.nodes;
 import consensus.transaction.Candidate;
 import consensus.transaction.Transaction;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -16,9 +16,26 @@ import java.util.HashSet;
  */
 public class MaliciousNode implements Node {
 
-    private Random random = new Random(42);
+    /** Stream of this node alone, so that nodes do not contend on a shared generator */
+    private final SplittableRandom random;
 
     public MaliciousNode(double pGraph, double pMalicious, double pTxDistribution, int numRounds) {
+
+        this(pGraph, pMalicious, pTxDistribution, numRounds, new SplittableRandom());
+    }
+
+    /**
+     * Build malicious node
+     * @param pGraph Simulation parameter
+     * @param pMalicious Simulation parameter
+     * @param pTxDistribution Simulation parameter
+     * @param numRounds Simulation parameter
+     * @param random Random stream of this node, seeded by the simulation to make runs reproducible
+     */
+    public MaliciousNode(double pGraph, double pMalicious, double pTxDistribution, int numRounds,
+                         SplittableRandom random) {
+
+        this.random = random;
     }
 
     @Override
@@ -26,6 +43,11 @@ public class MaliciousNode implements Node {
 
     }
 
+    @Override
+    public void setFollowees(int[] followees, int numNodes) {
+
+    }
+
     @Override
     public void setPendingTransaction(Set<Transaction> pendingTransactions) {
 
@@ -53,4 +75,8 @@ public class MaliciousNode implements Node {
     @Override
     public void receiveFromFollowees(Set<Candidate> candidates) {
     }
+
+    @Override
+    public void receiveFromFollowees(long[] messages, int from, int to) {
+    }
 }
@@ -1,8 +1,10 @@
 package consensus.nodes;
 
 import consensus.transaction.Candidate;
+import consensus.transaction.Messages;
 import consensus.transaction.Transaction;
 
+import java.util.HashSet;
 import java.util.Set;
 
 public interface Node {
@@ -14,6 +16,21 @@ public interface Node {
     /** {@code followees[i]} is true if and only if this node follows node {@code i} */
     void setFollowees(boolean[] followees);
 
+    /**
+     * Sparse variant of {@link #setFollowees(boolean[])} used by the simulation. The default
+     * implementation expands the list into a dense array, override it to keep memory O(followees).
+     * @param followees Ascending indices of the nodes this node follows
+     * @param numNodes Number of nodes in the network
+     */
+    default void setFollowees(int[] followees, int numNodes) {
+
+        boolean[] dense = new boolean[numNodes];
+        for (int followee : followees) {
+            dense[followee] = true;
+        }
+        this.setFollowees(dense);
+    }
+
     /** initialize proposal list of transactions */
     void setPendingTransaction(Set<Transaction> pendingTransactions);
 
@@ -26,4 +43,21 @@ public interface Node {
 
     /** receive candidates from other nodes. */
     void receiveFromFollowees(Set<Candidate> candidates);
+
+    /**
+     * Receive candidates from other nodes as packed messages, see {@link Messages}. The buffer is reused
+     * by the simulation and is only valid during the call. The default implementation converts the
+     * messages into {@link Candidate} objects, override it to avoid the allocations.
+     * @param messages Buffer of packed messages
+     * @param from Index of the first message
+     * @param to Index one past the last message
+     */
+    default void receiveFromFollowees(long[] messages, int from, int to) {
+
+        Set<Candidate> candidates = new HashSet<>();
+        for (int m = from; m < to; m++) {
+            candidates.add(new Candidate(new Transaction(Messages.getTxId(messages[m])), Messages.getSender(messages[m])));
+        }
+        this.receiveFromFollowees(candidates);
+    }
 }
@@ -0,0 +1,180 @@
+package consensus.simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Follow graph of the simulated network in compressed sparse row form.
+ * There is an edge from node i to node j if i follows j. Both directions are stored: the followees
+ * of node i are {@code followees[followeeOffsets[i]] .. followees[followeeOffsets[i + 1] - 1]} and its
+ * followers likewise, each list in ascending order. Memory is O(N + E) instead of the O(N²) of a
+ * dense matrix.
+ */
+public class FollowGraph {
+
+    /** Number of nodes */
+    private final int numNodes;
+
+    private final int[] followeeOffsets;
+    private final int[] followees;
+
+    private final int[] followerOffsets;
+    private final int[] followers;
+
+    /**
+     * Build the graph from the followee lists
+     * @param numNodes Number of nodes
+     * @param followeeOffsets Followees of node i start at {@code followeeOffsets[i]}, length {@code numNodes + 1}
+     * @param followees Followees of all nodes, each list in ascending order
+     */
+    private FollowGraph(int numNodes, int[] followeeOffsets, int[] followees) {
+
+        this.numNodes = numNodes;
+        this.followeeOffsets = followeeOffsets;
+        this.followees = followees;
+
+        // Transpose, visiting followers in ascending order keeps the follower lists sorted
+        this.followerOffsets = new int[numNodes + 1];
+        for (int e = 0; e < followees.length; e++) {
+            this.followerOffsets[followees[e] + 1]++;
+        }
+        for (int n = 0; n < numNodes; n++) {
+            this.followerOffsets[n + 1] += this.followerOffsets[n];
+        }
+        this.followers = new int[followees.length];
+        int[] next = Arrays.copyOf(this.followerOffsets, numNodes);
+        for (int i = 0; i < numNodes; i++) {
+
+            for (int e = followeeOffsets[i]; e < followeeOffsets[i + 1]; e++) {
+                this.followers[next[followees[e]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Generate a random graph in which each node follows each other node with probability {@code pGraph}
+     * @param numNodes Number of nodes
+     * @param pGraph Probability that an edge exists
+     * @param random Source of randomness, one stream is split off per node
+     * @return Follow graph
+     */
+    public static FollowGraph random(int numNodes, double pGraph, SplittableRandom random) {
+
+        int[][] followees = new int[numNodes][];
+        for (int i = 0; i < numNodes; i++) {
+            followees[i] = randomFollowees(i, numNodes, pGraph, random.split());
+        }
+        return of(followees);
+    }
+
+    /**
+     * Draw the followees of node {@code i}, each other node being followed with probability {@code pGraph}.
+     * Instead of drawing one random number per pair, the gap to the next edge is drawn from the
+     * geometric distribution, so this takes O(1 + followees) time. Rows of different nodes use
+     * independent streams and may be drawn in parallel.
+     * @param i Index of the node
+     * @param numNodes Number of nodes
+     * @param pGraph Probability that an edge exists
+     * @param random Stream of node {@code i}
+     * @return Ascending indices of the followees
+     */
+    public static int[] randomFollowees(int i, int numNodes, double pGraph, SplittableRandom random) {
+
+        int[] followees = new int[16];
+        int numFollowees = 0;
+
+        // Pairs (i, j) with j != i are enumerated as c = 0 .. numNodes - 2, where j = c < i ? c : c + 1
+        double logQ = Math.log1p(-pGraph);
+        int c = -1;
+        while (pGraph > 0) {
+
+            // Number of pairs skipped before the next edge, may exceed the int range for small p
+            double skip = pGraph >= 1 ? 0 : Math.floor(Math.log(1 - random.nextDouble()) / logQ);
+            if (c + 1 + skip >= numNodes - 1) {
+                break;
+            }
+            c += 1 + (int) skip;
+            if (numFollowees == followees.length) {
+                followees = Arrays.copyOf(followees, 2 * numFollowees);
+            }
+            followees[numFollowees++] = c < i ? c : c + 1;
+        }
+        return Arrays.copyOf(followees, numFollowees);
+    }
+
+    /**
+     * Build the graph from the followee lists of all nodes
+     * @param followees Ascending indices of the followees of each node
+     * @return Follow graph
+     */
+    public static FollowGraph of(int[][] followees) {
+
+        int numNodes = followees.length;
+        int[] followeeOffsets = new int[numNodes + 1];
+        long numEdges = 0;
+        for (int i = 0; i < numNodes; i++) {
+
+            numEdges += followees[i].length;
+            if (numEdges > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException(String.format(
+                        "Follow graph of %d nodes has too many edges", numNodes));
+            }
+            followeeOffsets[i + 1] = (int) numEdges;
+        }
+        int[] edges = new int[(int) numEdges];
+        for (int i = 0; i < numNodes; i++) {
+            System.arraycopy(followees[i], 0, edges, followeeOffsets[i], followees[i].length);
+        }
+        return new FollowGraph(numNodes, followeeOffsets, edges);
+    }
+
+    /** @return Number of nodes */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    /** @return Number of edges */
+    public int getNumEdges() {
+        return followees.length;
+    }
+
+    /** @return True if node {@code i} follows node {@code j} */
+    public boolean follows(int i, int j) {
+        return Arrays.binarySearch(followees, followeeOffsets[i], followeeOffsets[i + 1], j) >= 0;
+    }
+
+    /** @return Ascending copy of the nodes followed by node {@code i} */
+    public int[] getFollowees(int i) {
+        return Arrays.copyOfRange(followees, followeeOffsets[i], followeeOffsets[i + 1]);
+    }
+
+    /** @return Index of the first followee of node {@code i} in {@link #getFollowee(int)} */
+    public int firstFollowee(int i) {
+        return followeeOffsets[i];
+    }
+
+    /** @return Index one past the last followee of node {@code i} */
+    public int lastFollowee(int i) {
+        return followeeOffsets[i + 1];
+    }
+
+    /** @return The followee stored at position {@code e} */
+    public int getFollowee(int e) {
+        return followees[e];
+    }
+
+    /** @return Index of the first follower of node {@code i} in {@link #getFollower(int)} */
+    public int firstFollower(int i) {
+        return followerOffsets[i];
+    }
+
+    /** @return Index one past the last follower of node {@code i} */
+    public int lastFollower(int i) {
+        return followerOffsets[i + 1];
+    }
+
+    /** @return The follower stored at position {@code e} */
+    public int getFollower(int e) {
+        return followers[e];
+    }
+}
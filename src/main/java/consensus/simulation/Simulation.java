@@ -4,11 +4,14 @@ import crypto.transaction.TxHandler;
 import consensus.nodes.CompliantNode;
 import consensus.nodes.Node;
 import consensus.nodes.MaliciousNode;
-import consensus.transaction.Candidate;
+import consensus.transaction.Messages;
 import consensus.transaction.Transaction;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * Example of a Simulation. This test runs the nodes on a random graph.
@@ -36,6 +39,22 @@ public class Simulation {
     /** Number of simulation rounds your nodes will run for*/
     public int numRounds;
 
+    /**
+     * Seed of all random choices, runs with the same seed give the same results. Each subsystem (roles,
+     * graph, transactions, distribution, node behavior) draws from its own stream, split into one stream
+     * per node where nodes are handled in parallel.
+     */
+    public long seed;
+
+    /** Pool running the nodes of each phase in {@link #simulateInParallel()} */
+    private final ForkJoinPool forkJoinPool;
+
+    /** Minimum number of nodes handled by one fork-join task */
+    private static final int NODE_BATCH_THRESHOLD = 64;
+
+    /** Ranges of at most this many nodes are not split further, {@link #NODE_BATCH_THRESHOLD} by default */
+    private int nodeBatchThreshold = NODE_BATCH_THRESHOLD;
+
     /**
      * Build the network simulation
      * @param numNodes Number of nodes in the simulated network (100)
@@ -50,28 +69,72 @@ public class Simulation {
                       double pTxDistribution,
                       int numRounds) {
 
+        this(numNodes, pGraph, pMalicious, pTxDistribution, numRounds, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Build the network simulation, {@link #simulateInParallel()} runs on the common fork-join pool
+     * @param numNodes Number of nodes in the simulated network (100)
+     * @param pGraph Parameter for random graph: Probability that an edge will exist (0.1, 0.2, 0.3)
+     * @param pMalicious Probability that a node will be set to be malicious (0.15, 0.30, 0.45)
+     * @param pTxDistribution Probability of assigning an initial transaction to each node (10, 20)
+     * @param numRounds Number of simulation rounds your nodes will run for
+     * @param seed Seed of all random choices
+     */
+    public Simulation(int numNodes,
+                      double pGraph,
+                      double pMalicious,
+                      double pTxDistribution,
+                      int numRounds,
+                      long seed) {
+
+        this(numNodes, pGraph, pMalicious, pTxDistribution, numRounds, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Build the network simulation
+     * @param numNodes Number of nodes in the simulated network (100)
+     * @param pGraph Parameter for random graph: Probability that an edge will exist (0.1, 0.2, 0.3)
+     * @param pMalicious Probability that a node will be set to be malicious (0.15, 0.30, 0.45)
+     * @param pTxDistribution Probability of assigning an initial transaction to each node (10, 20)
+     * @param numRounds Number of simulation rounds your nodes will run for
+     * @param seed Seed of all random choices
+     * @param forkJoinPool Pool used by {@link #simulateInParallel()}
+     */
+    public Simulation(int numNodes,
+                      double pGraph,
+                      double pMalicious,
+                      double pTxDistribution,
+                      int numRounds,
+                      long seed,
+                      ForkJoinPool forkJoinPool) {
+
         this.numNodes = numNodes;
         this.pGraph = pGraph;
         this.pMalicious = pMalicious;
         this.pTxDistribution = pTxDistribution;
         this.numRounds = numRounds;
+        this.seed = seed;
+        this.forkJoinPool = forkJoinPool;
     }
 
     /**
      * pick which nodes are malicious and which are compliant
+     * @param roles Stream deciding the roles
+     * @param behavior Stream split into the streams of the malicious nodes
      * @return Array of nodes
      */
-    private Node[] generateRandomNodes() {
+    private Node[] generateRandomNodes(SplittableRandom roles, SplittableRandom behavior) {
 
         // pick which nodes are malicious and which are compliant
         Node[] nodes = new Node[numNodes];
         for (int i = 0; i < numNodes; i++) {
 
-            if(Math.random() < pMalicious) {
+            if(roles.nextDouble() < pMalicious) {
 
                 // TODO: When you are ready to try testing with malicious nodes, replace the
                 // instantiation below with an instantiation of a MaliciousNode
-                nodes[i] = new MaliciousNode(pGraph, pMalicious, pTxDistribution, numRounds);
+                nodes[i] = new MaliciousNode(pGraph, pMalicious, pTxDistribution, numRounds, behavior.split());
 
             } else {
 
@@ -82,125 +145,257 @@ public class Simulation {
     }
 
     /**
-     * Generate a random matrix of follows
-     * @return Boolean matrix: followees[i][j] is true iff i follows j
+     * Run the network simulation and print the transactions each node believes consensus on
      */
-    private boolean[][] generateRandomFollowees() {
-
-        boolean[][] followees = new boolean[numNodes][numNodes]; // followees[i][j] is true iff i follows j
-        for (int i = 0; i < numNodes; i++) {
-
-            for (int j = 0; j < numNodes; j++) {
+    public void run() {
 
-                if (i == j) continue;
+        this.simulate().print(System.out);
+    }
 
-                if(Math.random() < pGraph) {
+    /**
+     * Run the network simulation one node after another
+     * @return Consensus of each node and summary statistics of the run
+     */
+    public SimulationResult simulate() {
 
-                    followees[i][j] = true;
-                }
-            }
-        }
-        return followees;
+        return this.simulate(false);
     }
 
     /**
-     * Run the network simulation
+     * Run the network simulation, each phase of a round running the nodes in parallel on the fork-join pool.
+     * Nodes only touch their own state within a phase and proposals are routed by their receivers, so the
+     * results are identical to {@link #simulate()} for the same seed, apart from the wall time.
+     * @return Consensus of each node and summary statistics of the run
      */
-    public void run() {
+    public SimulationResult simulateInParallel() {
+
+        return this.simulate(true);
+    }
+
+    private SimulationResult simulate(boolean parallel) {
+
+        long start = System.nanoTime();
+
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom roles = root.split();
+        SplittableRandom behavior = root.split();
+        SplittableRandom[] graphStreams = split(root.split(), numNodes);
+        SplittableRandom transactions = root.split();
+        SplittableRandom[] distributionStreams = split(root.split(), numNodes);
 
         // Pick which nodes are malicious and which are compliant
-        Node[] nodes = this.generateRandomNodes();
+        Node[] nodes = this.generateRandomNodes(roles, behavior);
 
-        // Initialize random follow graph
-        boolean[][] followees = this.generateRandomFollowees();
+        // Initialize random follow graph, one row per node
+        int[][] followees = new int[numNodes][];
+        this.forEachNode(parallel, i ->
+                followees[i] = FollowGraph.randomFollowees(i, numNodes, pGraph, graphStreams[i]));
+        FollowGraph graph = FollowGraph.of(followees);
 
         // Notify all nodes of their followees
         for (int i = 0; i < numNodes; i++) {
 
-            nodes[i].setFollowees(followees[i]);
+            nodes[i].setFollowees(graph.getFollowees(i), numNodes);
         }
 
         // Initialize a set of 500 valid Transactions with random ids
         int numTx = 500;
         HashSet<Integer> validTxIds = new HashSet<>();
-        Random random = new Random();
         for (int i = 0; i < numTx; i++) {
 
-            int r = random.nextInt();
+            int r = transactions.nextInt();
             validTxIds.add(r);
         }
 
+        // Index of each valid transaction, to track the transactions each node has proposed so far
+        HashMap<Integer, Integer> txIndices = new HashMap<>();
+        for (Integer txID : validTxIds) {
+            txIndices.put(txID, txIndices.size());
+        }
+        BitSet[] proposed = new BitSet[numNodes];
+        int[] lastNewProposal = new int[numNodes];
+        Arrays.fill(lastNewProposal, -1);
+
         // Distribute the 500 Transactions throughout the nodes, to initialize
         // the starting state of Transactions each node has heard. The distribution
         // is random with probability pTxDistribution for each Transaction-Node pair.
-        for (int i = 0; i < numNodes; i++) {
+        this.forEachNode(parallel, i -> {
 
             HashSet<Transaction> pendingTransactions = new HashSet<>();
 
             for(Integer txID : validTxIds) {
 
-                if (Math.random() < pTxDistribution) {
+                if (distributionStreams[i].nextDouble() < pTxDistribution) {
 
                     pendingTransactions.add(new Transaction(txID));
                 }
             }
             nodes[i].setPendingTransaction(pendingTransactions);
-        }
+        });
 
         // Simulate for numRounds times
+        int[][] proposals = new int[numNodes][];
         for (int round = 0; round < numRounds; round++) { // numRounds is either 10 or 20
 
-            // Gather all the proposals into a map. The key is the index of the node receiving
-            // proposals. The value is an ArrayList containing 1x2 Integer arrays. The first
-            // element of each array is the id of the transaction being proposed and the second
-            // element is the index # of the node proposing the transaction.
-            HashMap<Integer, Set<Candidate>> allProposals = new HashMap<>();
+            // Gather the valid proposals of each node
+            int currentRound = round;
+            this.forEachNode(parallel, i -> {
 
-            for (int i = 0; i < numNodes; i++) {
-
-                Set<Transaction> proposals = nodes[i].sendToFollowers();
-
-                for (Transaction tx : proposals) {
+                if (proposed[i] == null) {
+                    proposed[i] = new BitSet(txIndices.size());
+                }
+                Set<Transaction> sent = nodes[i].sendToFollowers();
+                int[] valid = new int[sent.size()];
+                int numValid = 0;
+                for (Transaction tx : sent) {
 
-                    if (!validTxIds.contains(tx.getId())) {
+                    Integer txIndex = txIndices.get(tx.getId());
+                    if (txIndex == null) {
                         continue; // ensure that each tx is actually valid
                     }
+                    valid[numValid++] = tx.getId();
+                    if (!proposed[i].get(txIndex)) {
 
-                    for (int j = 0; j < numNodes; j++) {
+                        proposed[i].set(txIndex);
+                        lastNewProposal[i] = currentRound;
+                    }
+                }
+                proposals[i] = numValid == valid.length ? valid : Arrays.copyOf(valid, numValid);
+            });
 
-                        if(!followees[j][i]) continue; // tx only matters if j follows i
+            // Each node collects the proposals of its followees as packed messages, in ascending order of
+            // the followees, and receives them. The buffer is reused for the next node of the same range
+            // and dropped with the range. Nodes without candidates receive nothing.
+            this.forEachNodeRange(parallel, (from, to) -> {
 
-                        if (!allProposals.containsKey(j)) {
-                          Set<Candidate> candidates = new HashSet<>();
-                          allProposals.put(j, candidates);
-                        }
+                long[] messages = new long[64];
+                for (int j = from; j < to; j++) {
 
-                        Candidate candidate = new Candidate(tx, i);
-                        allProposals.get(j).add(candidate);
+                    int numMessages = 0;
+                    for (int e = graph.firstFollowee(j); e < graph.lastFollowee(j); e++) {
+                        numMessages += proposals[graph.getFollowee(e)].length;
+                    }
+                    if (numMessages == 0) {
+                        continue;
                     }
-                }
-            }
 
-            // Distribute the Proposals to their intended recipients as Candidates
-            for (int i = 0; i < numNodes; i++) {
+                    if (messages.length < numMessages) {
+                        messages = new long[Math.max(numMessages, 2 * messages.length)];
+                    }
+                    int m = 0;
+                    for (int e = graph.firstFollowee(j); e < graph.lastFollowee(j); e++) {
 
-                if (allProposals.containsKey(i)) {
-                    nodes[i].receiveFromFollowees(allProposals.get(i));
+                        int i = graph.getFollowee(e);
+                        for (int txId : proposals[i]) {
+                            messages[m++] = Messages.pack(txId, i);
+                        }
+                    }
+                    nodes[j].receiveFromFollowees(messages, 0, numMessages);
                 }
+            });
+        }
+
+        List<Set<Transaction>> consensus = new ArrayList<>(numNodes);
+        boolean[] malicious = new boolean[numNodes];
+        int convergenceRound = 0;
+        for (int i = 0; i < numNodes; i++) {
+
+            consensus.add(nodes[i].sendToFollowers());
+            malicious[i] = nodes[i] instanceof MaliciousNode;
+            if (!malicious[i]) {
+                convergenceRound = Math.max(convergenceRound, lastNewProposal[i] + 1);
             }
         }
+        return new SimulationResult(consensus, malicious, convergenceRound, System.nanoTime() - start);
+    }
 
-        // print results
+    /**
+     * Split {@code random} into one stream per node
+     */
+    private static SplittableRandom[] split(SplittableRandom random, int numNodes) {
+
+        SplittableRandom[] streams = new SplittableRandom[numNodes];
         for (int i = 0; i < numNodes; i++) {
+            streams[i] = random.split();
+        }
+        return streams;
+    }
+
+    /**
+     * Apply {@code action} to every node, either in index order or split into ranges on the fork-join pool
+     */
+    private void forEachNode(boolean parallel, IntConsumer action) {
+
+        this.forEachNodeRange(parallel, (from, to) -> {
+
+            for (int i = from; i < to; i++) {
+                action.accept(i);
+            }
+        });
+    }
+
+    /**
+     * Apply {@code action} to all nodes as one range, or to disjoint ranges on the fork-join pool
+     */
+    private void forEachNodeRange(boolean parallel, RangeAction action) {
+
+        if (!parallel) {
+
+            action.apply(0, numNodes);
+            return;
+        }
+        this.forkJoinPool.invoke(new NodeTask(action, 0, numNodes, this.nodeBatchThreshold));
+    }
+
+    /**
+     * Split the nodes into smaller tasks than by default, so that tests get many tasks from few nodes
+     * @param nodeBatchThreshold Ranges of at most this many nodes are handled by one task
+     */
+    void setNodeBatchThreshold(int nodeBatchThreshold) {
+
+        if (nodeBatchThreshold < 1) {
+            throw new IllegalArgumentException(String.format("Batch threshold must be positive, got %d", nodeBatchThreshold));
+        }
+        this.nodeBatchThreshold = nodeBatchThreshold;
+    }
+
+    /**
+     * Action on the nodes {@code from} (inclusive) to {@code to} (exclusive)
+     */
+    @FunctionalInterface
+    private interface RangeAction {
+
+        void apply(int from, int to);
+    }
+
+    /**
+     * Applies an action to the nodes {@code from} (inclusive) to {@code to} (exclusive)
+     */
+    private static class NodeTask extends RecursiveAction {
+
+        private final RangeAction action;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        NodeTask(RangeAction action, int from, int to, int threshold) {
+
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
 
-            Set<Transaction> transactions = nodes[i].sendToFollowers();
-            System.out.println("Transaction ids that Node " + i + " believes consensus on:");
+            if (this.to - this.from > this.threshold) {
 
-            for (Transaction tx : transactions) {
-                System.out.println(tx.getId());
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new NodeTask(action, from, middle, threshold), new NodeTask(action, middle, to, threshold));
+                return;
             }
-            System.out.println();
-            System.out.println();
+            this.action.apply(this.from, this.to);
         }
     }
-}
\ No newline at end of file
+}
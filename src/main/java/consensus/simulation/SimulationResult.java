@@ -0,0 +1,134 @@
+package consensus.simulation;
+
+import consensus.transaction.Transaction;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outcome of one {@link Simulation} run: the transactions each node believes consensus on, which nodes
+ * were malicious, and summary statistics over the compliant nodes.
+ */
+public class SimulationResult {
+
+    /** For each node, the transactions it believes consensus on */
+    private final List<Set<Transaction>> consensus;
+
+    /** {@code malicious[i]} is true iff node i was malicious */
+    private final boolean[] malicious;
+
+    /** Number of rounds after which no compliant node proposed a transaction it had not proposed before */
+    private final int convergenceRound;
+
+    /** Wall time of the run in nanoseconds */
+    private final long wallNanos;
+
+    /**
+     * Build result
+     * @param consensus For each node, the transactions it believes consensus on
+     * @param malicious For each node, whether it was malicious
+     * @param convergenceRound Number of rounds until compliant nodes stopped proposing new transactions
+     * @param wallNanos Wall time of the run in nanoseconds
+     */
+    SimulationResult(List<Set<Transaction>> consensus, boolean[] malicious, int convergenceRound, long wallNanos) {
+
+        this.consensus = consensus;
+        this.malicious = malicious;
+        this.convergenceRound = convergenceRound;
+        this.wallNanos = wallNanos;
+    }
+
+    /** @return For each node, the transactions it believes consensus on */
+    public List<Set<Transaction>> getConsensus() {
+        return consensus;
+    }
+
+    /** @return True if node {@code i} was malicious */
+    public boolean isMalicious(int i) {
+        return malicious[i];
+    }
+
+    /** @return Number of nodes */
+    public int getNumNodes() {
+        return malicious.length;
+    }
+
+    /** @return Number of rounds after which no compliant node proposed a transaction it had not proposed before */
+    public int getConvergenceRound() {
+        return convergenceRound;
+    }
+
+    /** @return Wall time of the run in nanoseconds */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Fraction of compliant nodes agreeing with the majority, i.e. whose consensus equals the
+     * consensus most compliant nodes reached
+     * @return Agreement rate between 0 and 1, 1 if there are no compliant nodes
+     */
+    public double getAgreementRate() {
+
+        Map<Set<Transaction>, Integer> counts = new HashMap<>();
+        int numCompliant = 0;
+        int majority = 0;
+        for (int i = 0; i < malicious.length; i++) {
+
+            if (malicious[i]) {
+                continue;
+            }
+            numCompliant++;
+            majority = Math.max(majority, counts.merge(consensus.get(i), 1, Integer::sum));
+        }
+        return numCompliant == 0 ? 1 : (double) majority / numCompliant;
+    }
+
+    /**
+     * Print the transaction ids each node believes consensus on
+     * @param out Target stream
+     */
+    public void print(PrintStream out) {
+
+        for (int i = 0; i < consensus.size(); i++) {
+
+            out.println("Transaction ids that Node " + i + " believes consensus on:");
+
+            for (Transaction tx : consensus.get(i)) {
+                out.println(tx.getId());
+            }
+            out.println();
+            out.println();
+        }
+    }
+
+    /**
+     * Results are equal if every node reached the same consensus and had the same role, the wall time
+     * is not compared
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SimulationResult)) {
+            return false;
+        }
+        SimulationResult other = (SimulationResult) obj;
+
+        return this.convergenceRound == other.convergenceRound &&
+               Arrays.equals(this.malicious, other.malicious) &&
+               this.consensus.equals(other.consensus);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return this.consensus.hashCode();
+    }
+}
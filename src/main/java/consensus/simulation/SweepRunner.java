@@ -0,0 +1,306 @@
+package consensus.simulation;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link Simulation} over a grid of parameters, several seeds per grid point, and aggregates
+ * agreement rate, convergence round and wall time per point. At most {@code concurrency} simulations
+ * run at a time, each of them sequentially, so the machine is kept busy without nesting parallelism.
+ * Seeds are derived from one base seed, a sweep is therefore reproducible apart from the wall times.
+ */
+public class SweepRunner {
+
+    private final static Logger logger = Logger.getLogger(SweepRunner.class);
+
+    /** Columns of {@link #toCsv(List)}, also the keys of {@link #toJson(List)} */
+    private static final String[] COLUMNS = {"numNodes", "pGraph", "pMalicious", "pTxDistribution", "numRounds",
+            "numSeeds", "agreementRate", "minAgreementRate", "convergenceRound", "wallMillis"};
+
+    private final int numNodes;
+    private final double[] pGraphs;
+    private final double[] pMalicious;
+    private final double[] pTxDistributions;
+    private final int[] numRounds;
+
+    /** Number of runs per grid point */
+    private final int numSeeds;
+
+    /** Seed the seeds of the runs are derived from */
+    private final long seed;
+
+    /**
+     * Build sweep over all combinations of the given parameters
+     * @param numNodes Number of nodes in the simulated network
+     * @param pGraphs Probabilities that an edge exists
+     * @param pMalicious Probabilities that a node is malicious
+     * @param pTxDistributions Probabilities of assigning an initial transaction to a node
+     * @param numRounds Numbers of rounds
+     * @param numSeeds Number of runs per combination
+     * @param seed Seed the seeds of the runs are derived from
+     */
+    public SweepRunner(int numNodes,
+                       double[] pGraphs,
+                       double[] pMalicious,
+                       double[] pTxDistributions,
+                       int[] numRounds,
+                       int numSeeds,
+                       long seed) {
+
+        if (numSeeds < 1) {
+            throw new IllegalArgumentException(String.format("At least one seed per point required, got %d", numSeeds));
+        }
+        this.numNodes = numNodes;
+        this.pGraphs = pGraphs;
+        this.pMalicious = pMalicious;
+        this.pTxDistributions = pTxDistributions;
+        this.numRounds = numRounds;
+        this.numSeeds = numSeeds;
+        this.seed = seed;
+    }
+
+    /**
+     * The 3x3x3x2 = 54 combinations the simulation is meant to be tried with
+     * @param numNodes Number of nodes in the simulated network (100)
+     * @param numSeeds Number of runs per combination
+     * @param seed Seed the seeds of the runs are derived from
+     * @return Sweep runner
+     */
+    public static SweepRunner defaultSweep(int numNodes, int numSeeds, long seed) {
+
+        return new SweepRunner(numNodes,
+                new double[] {0.1, 0.2, 0.3},
+                new double[] {0.15, 0.30, 0.45},
+                new double[] {0.01, 0.05, 0.10},
+                new int[] {10, 20},
+                numSeeds,
+                seed);
+    }
+
+    /**
+     * Run all simulations of the sweep
+     * @param concurrency Maximum number of simulations running at the same time
+     * @return One aggregated result per grid point, in grid order
+     */
+    public List<Point> run(int concurrency) {
+
+        SplittableRandom seeds = new SplittableRandom(this.seed);
+        List<Point> points = new ArrayList<>();
+        List<List<Future<Run>>> runs = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+
+            for (double pGraph : this.pGraphs) {
+                for (double pMalicious : this.pMalicious) {
+                    for (double pTxDistribution : this.pTxDistributions) {
+                        for (int numRounds : this.numRounds) {
+
+                            points.add(new Point(this.numNodes, pGraph, pMalicious, pTxDistribution, numRounds));
+
+                            List<Future<Run>> futures = new ArrayList<>(this.numSeeds);
+                            for (int n = 0; n < this.numSeeds; n++) {
+
+                                Simulation simulation = new Simulation(this.numNodes, pGraph, pMalicious,
+                                        pTxDistribution, numRounds, seeds.nextLong());
+
+                                // Only the summary outlives the task, the consensus sets are dropped on the worker
+                                futures.add(executor.submit(() -> new Run(simulation.simulate())));
+                            }
+                            runs.add(futures);
+                        }
+                    }
+                }
+            }
+
+            for (int p = 0; p < points.size(); p++) {
+
+                for (Future<Run> future : runs.get(p)) {
+                    points.get(p).add(future.get());
+                }
+                logger.info(points.get(p));
+            }
+            return points;
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sweep has been interrupted", e);
+
+        } catch (ExecutionException e) {
+
+            logger.error("Simulation failed", e.getCause());
+            throw new IllegalStateException("Simulation failed", e.getCause());
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param points Results of a sweep
+     * @return Table with a header line and one line per point
+     */
+    public static String toCsv(List<Point> points) {
+
+        StringBuilder csv = new StringBuilder(String.join(",", COLUMNS)).append('\n');
+        for (Point point : points) {
+            csv.append(String.join(",", point.values())).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @param points Results of a sweep
+     * @return JSON array with one object per point
+     */
+    public static String toJson(List<Point> points) {
+
+        StringBuilder json = new StringBuilder("[");
+        String separator = "";
+        for (Point point : points) {
+
+            String[] values = point.values();
+            json.append(separator).append('{');
+            for (int c = 0; c < COLUMNS.length; c++) {
+                json.append(c == 0 ? "" : ",").append('"').append(COLUMNS[c]).append("\":").append(values[c]);
+            }
+            json.append('}');
+            separator = ",";
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Write the results of a sweep as CSV or, if the file name ends with {@code .json}, as JSON
+     * @param points Results of a sweep
+     * @param file Target file
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(List<Point> points, Path file) throws IOException {
+
+        String content = file.toString().endsWith(".json") ? toJson(points) : toCsv(points);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Summary of one run
+     */
+    private static final class Run {
+
+        private final double agreementRate;
+        private final int convergenceRound;
+        private final long wallNanos;
+
+        Run(SimulationResult result) {
+
+            this.agreementRate = result.getAgreementRate();
+            this.convergenceRound = result.getConvergenceRound();
+            this.wallNanos = result.getWallNanos();
+        }
+    }
+
+    /**
+     * Parameters of one grid point and the results of its runs
+     */
+    public static class Point {
+
+        private final int numNodes;
+        private final double pGraph;
+        private final double pMalicious;
+        private final double pTxDistribution;
+        private final int numRounds;
+
+        /** Summaries of the runs, the consensus sets of the runs are not kept */
+        private final List<Double> agreementRates = new ArrayList<>();
+        private final List<Integer> convergenceRounds = new ArrayList<>();
+        private final List<Long> wallNanos = new ArrayList<>();
+
+        Point(int numNodes, double pGraph, double pMalicious, double pTxDistribution, int numRounds) {
+
+            this.numNodes = numNodes;
+            this.pGraph = pGraph;
+            this.pMalicious = pMalicious;
+            this.pTxDistribution = pTxDistribution;
+            this.numRounds = numRounds;
+        }
+
+        void add(Run run) {
+
+            this.agreementRates.add(run.agreementRate);
+            this.convergenceRounds.add(run.convergenceRound);
+            this.wallNanos.add(run.wallNanos);
+        }
+
+        /** @return Number of runs */
+        public int getNumRuns() {
+            return agreementRates.size();
+        }
+
+        /** @return Agreement rate of each run, see {@link SimulationResult#getAgreementRate()} */
+        public List<Double> getAgreementRates() {
+            return Collections.unmodifiableList(agreementRates);
+        }
+
+        /** @return Mean agreement rate over the runs */
+        public double getAgreementRate() {
+            return agreementRates.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+        }
+
+        /** @return Lowest agreement rate of the runs */
+        public double getMinAgreementRate() {
+            return agreementRates.stream().mapToDouble(Double::doubleValue).min().orElse(Double.NaN);
+        }
+
+        /** @return Mean convergence round over the runs */
+        public double getConvergenceRound() {
+            return convergenceRounds.stream().mapToInt(Integer::intValue).average().orElse(Double.NaN);
+        }
+
+        /** @return Mean wall time of a run in milliseconds */
+        public double getWallMillis() {
+            return wallNanos.stream().mapToLong(Long::longValue).average().orElse(Double.NaN) / 1e6;
+        }
+
+        /** @return Values in the order of the columns */
+        private String[] values() {
+
+            return new String[] {
+                    String.valueOf(numNodes),
+                    format(pGraph),
+                    format(pMalicious),
+                    format(pTxDistribution),
+                    String.valueOf(numRounds),
+                    String.valueOf(this.getNumRuns()),
+                    format(this.getAgreementRate()),
+                    format(this.getMinAgreementRate()),
+                    format(this.getConvergenceRound()),
+                    String.format(Locale.ROOT, "%.1f", this.getWallMillis())
+            };
+        }
+
+        private static String format(double value) {
+
+            return String.format(Locale.ROOT, "%.4f", value);
+        }
+
+        @Override
+        public String toString() {
+
+            return String.join(",", this.values());
+        }
+    }
+}
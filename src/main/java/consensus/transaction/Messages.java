@@ -0,0 +1,34 @@
+package consensus.transaction;
+
+/**
+ * Candidate transactions packed into primitive longs, the transaction id in the upper and the index
+ * of the sending node in the lower 32 bits. Used to deliver proposals without allocating a
+ * {@link Candidate} per (transaction, follower) pair.
+ */
+public final class Messages {
+
+    private Messages() {
+    }
+
+    /**
+     * @param txId Id of the proposed transaction
+     * @param sender Index of the node proposing it
+     * @return Packed message
+     */
+    public static long pack(int txId, int sender) {
+
+        return ((long) txId << 32) | (sender & 0xFFFFFFFFL);
+    }
+
+    /** @return Id of the transaction of a packed message */
+    public static int getTxId(long message) {
+
+        return (int) (message >>> 32);
+    }
+
+    /** @return Index of the sender of a packed message */
+    public static int getSender(long message) {
+
+        return (int) message;
+    }
+}
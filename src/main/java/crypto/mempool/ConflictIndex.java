@@ -0,0 +1,99 @@
+package crypto.mempool;
+
+import crypto.transaction.Transaction;
+import crypto.transaction.TransactionInput;
+import crypto.transaction.UTXO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index of the outpoints claimed by pending transactions, mapping each outpoint to the one pending
+ * transaction spending it. Finding the pending transactions a new one conflicts with costs one hash
+ * lookup per input, independent of the number of pending transactions.
+ */
+public class ConflictIndex {
+
+    /** Outpoint -> pending transaction spending it */
+    private final HashMap<UTXO, Transaction> spenders = new HashMap<>();
+
+    /**
+     * @param utxo Outpoint
+     * @return The pending transaction spending {@code utxo}, or null if there is none
+     */
+    public Transaction getSpender(UTXO utxo) {
+
+        return this.spenders.get(utxo);
+    }
+
+    /**
+     * @param tx Transaction
+     * @return True if a pending transaction other than {@code tx} claims an outpoint claimed by {@code tx}
+     */
+    public boolean conflicts(Transaction tx) {
+
+        UTXO.Probe probe = new UTXO.Probe();
+        for (TransactionInput input : tx.getInputs()) {
+
+            Transaction spender = this.spenders.get(probe.wrap(input.prevTxHash, input.outputIndex));
+            if (spender != null && spender != tx) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param tx Transaction
+     * @return The pending transactions other than {@code tx} claiming an outpoint claimed by {@code tx},
+     *         in the order of the inputs of {@code tx}
+     */
+    public List<Transaction> getConflicts(Transaction tx) {
+
+        List<Transaction> conflicts = new ArrayList<>(1);
+        UTXO.Probe probe = new UTXO.Probe();
+        for (TransactionInput input : tx.getInputs()) {
+
+            Transaction spender = this.spenders.get(probe.wrap(input.prevTxHash, input.outputIndex));
+            if (spender != null && spender != tx && !conflicts.contains(spender)) {
+                conflicts.add(spender);
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Register the outpoints claimed by a pending transaction, conflicting transactions have to be removed first
+     * @param tx Pending transaction
+     */
+    public void add(Transaction tx) {
+
+        for (TransactionInput input : tx.getInputs()) {
+
+            Transaction spender = this.spenders.putIfAbsent(new UTXO(input.prevTxHash, input.outputIndex), tx);
+            if (spender != null && spender != tx) {
+
+                this.remove(tx);
+                throw new IllegalStateException("Transaction conflicts with a pending transaction");
+            }
+        }
+    }
+
+    /**
+     * Release the outpoints claimed by a transaction that is no longer pending
+     * @param tx Transaction
+     */
+    public void remove(Transaction tx) {
+
+        UTXO.Probe probe = new UTXO.Probe();
+        for (TransactionInput input : tx.getInputs()) {
+            this.spenders.remove(probe.wrap(input.prevTxHash, input.outputIndex), tx);
+        }
+    }
+
+    /** @return Number of claimed outpoints */
+    public int size() {
+        return this.spenders.size();
+    }
+}
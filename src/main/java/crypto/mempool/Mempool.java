@@ -0,0 +1,359 @@
+package crypto.mempool;
+
+import crypto.transaction.Transaction;
+import crypto.transaction.TransactionInput;
+import crypto.transaction.TxHandler;
+import crypto.transaction.UTXO;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Pool of transactions waiting across epochs, on top of a {@link TxHandler}. All transactions should
+ * be passed through the mempool, so that every output added to the UTXO pool can release its orphans.
+ * A proposed transaction that is rejected because it claims outputs not in the UTXO pool (yet) is
+ * kept as an orphan, indexed by each outpoint it is missing. Whenever a transaction is accepted,
+ * only the orphans waiting for one of its outputs are looked at again, and those whose inputs are all
+ * available are validated and applied, which may in turn release their own children.
+ * The outpoints claimed by orphans are kept in a {@link ConflictIndex}: an orphan conflicting with a
+ * pending one is admitted only if the {@link ReplacementPolicy} says so, and orphans conflicting with
+ * an accepted transaction are dropped without being validated.
+ * Orphans are evicted when their parents have not arrived within {@code maxOrphanAge} further epochs, and the oldest orphans are
+ * evicted as soon as more than {@code maxOrphans} are waiting.
+ */
+public class Mempool {
+
+    final static Logger logger = Logger.getLogger(Mempool.class);
+
+    public static final int DEFAULT_MAX_ORPHANS = 10000;
+    public static final int DEFAULT_MAX_ORPHAN_AGE = 20;
+
+    /** Handler validating and applying transactions */
+    private final TxHandler txHandler;
+
+    /** Maximum number of orphans kept */
+    private final int maxOrphans;
+
+    /** Number of epochs after its arrival an orphan is kept */
+    private final int maxOrphanAge;
+
+    /** Orphans by transaction hash, in order of arrival */
+    private final LinkedHashMap<ByteBuffer, Orphan> orphans = new LinkedHashMap<>();
+
+    /** Orphans by an outpoint they are missing */
+    private final HashMap<UTXO, List<Orphan>> orphansByOutpoint = new HashMap<>();
+
+    /** Outpoints claimed by the orphans */
+    private final ConflictIndex conflictIndex = new ConflictIndex();
+
+    /** Decides about orphans conflicting with pending ones */
+    private ReplacementPolicy replacementPolicy = ReplacementPolicy.FIRST_SEEN;
+
+    /** Number of epochs handled */
+    private long epoch;
+
+    /** Number of orphans evicted so far */
+    private long numEvicted;
+
+    /** Number of orphans dropped or not admitted because of a conflict */
+    private long numConflicts;
+
+    /**
+     * Create a mempool with the default limits
+     * @param txHandler Handler validating and applying transactions
+     */
+    public Mempool(TxHandler txHandler) {
+
+        this(txHandler, DEFAULT_MAX_ORPHANS, DEFAULT_MAX_ORPHAN_AGE);
+    }
+
+    /**
+     * Create a mempool
+     * @param txHandler Handler validating and applying transactions
+     * @param maxOrphans Maximum number of orphans kept
+     * @param maxOrphanAge Number of epochs after its arrival an orphan is kept
+     */
+    public Mempool(TxHandler txHandler, int maxOrphans, int maxOrphanAge) {
+
+        if (maxOrphans < 0 || maxOrphanAge < 0) {
+            throw new IllegalArgumentException("Orphan limits must not be negative");
+        }
+        this.txHandler = txHandler;
+        this.maxOrphans = maxOrphans;
+        this.maxOrphanAge = maxOrphanAge;
+    }
+
+    /**
+     * Set the policy deciding whether an orphan replaces the pending orphans it conflicts with
+     * @param replacementPolicy Replacement policy, {@link ReplacementPolicy#FIRST_SEEN} by default
+     */
+    public void setReplacementPolicy(ReplacementPolicy replacementPolicy) {
+        this.replacementPolicy = replacementPolicy;
+    }
+
+    public ReplacementPolicy getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    /**
+     * Handle an epoch: apply the proposed transactions, keep those missing a parent as orphans and
+     * admit the orphans whose parents have been accepted
+     * @param possibleTxs Proposed transactions
+     * @return Accepted transactions in the order they were applied, including admitted orphans
+     */
+    public Transaction[] handleTxs(Transaction[] possibleTxs) {
+
+        List<Transaction> acceptedTxs = new ArrayList<>();
+        ArrayDeque<Transaction> released = new ArrayDeque<>();
+        HashSet<ByteBuffer> acceptedHashes = new HashSet<>();
+        HashSet<UTXO> spent = new HashSet<>();
+
+        // Chains within the epoch are resolved by the dependency order
+        for (Transaction tx : this.txHandler.handleTxsInDependencyOrder(possibleTxs)) {
+
+            acceptedTxs.add(tx);
+            released.add(tx);
+            acceptedHashes.add(ByteBuffer.wrap(tx.getHash()));
+            for (TransactionInput input : tx.getInputs()) {
+                spent.add(new UTXO(input.prevTxHash, input.outputIndex));
+            }
+            this.dropConflicts(tx);
+        }
+
+        // Rejected transactions of the epoch may just be waiting for a parent
+        for (Transaction tx : possibleTxs) {
+
+            if (!acceptedHashes.contains(ByteBuffer.wrap(tx.getHash()))) {
+                this.addOrphan(tx, acceptedHashes, spent);
+            }
+        }
+
+        while (!released.isEmpty()) {
+
+            Transaction parent = released.poll();
+            byte[] parentHash = parent.getHash();
+
+            UTXO.Probe probe = new UTXO.Probe();
+            for (int outputIndex = 0; outputIndex < parent.numberOfOutputs(); outputIndex++) {
+
+                List<Orphan> waiting = this.orphansByOutpoint.remove(probe.wrap(parentHash, outputIndex));
+                if (waiting == null) {
+                    continue;
+                }
+                for (Orphan orphan : waiting) {
+
+                    if (--orphan.numMissing > 0 || !this.orphans.containsKey(orphan.key)) {
+                        continue;
+                    }
+                    this.removeOrphan(orphan);
+
+                    // Orphans do not conflict with each other, so no other orphan can claim its inputs
+                    if (this.txHandler.acceptTx(orphan.tx)) {
+
+                        acceptedTxs.add(orphan.tx);
+                        released.add(orphan.tx);
+                    }
+                }
+            }
+        }
+        // Admitted orphans are made durable in one batch
+        this.txHandler.commit();
+
+        this.epoch++;
+        this.evictExpired();
+
+        return acceptedTxs.toArray(new Transaction[0]);
+    }
+
+    /**
+     * @param tx Transaction
+     * @return True if {@code tx} claims an outpoint claimed by a pending orphan
+     */
+    public boolean conflicts(Transaction tx) {
+        return this.conflictIndex.conflicts(tx);
+    }
+
+    /** @return Number of orphans waiting for a parent */
+    public int getNumOrphans() {
+        return this.orphans.size();
+    }
+
+    /**
+     * @param hash Hash of a transaction
+     * @return True if the transaction is waiting for a parent
+     */
+    public boolean isOrphan(byte[] hash) {
+        return this.orphans.containsKey(ByteBuffer.wrap(hash));
+    }
+
+    /** @return Number of orphans evicted because of their age or the size limit */
+    public long getNumEvicted() {
+        return this.numEvicted;
+    }
+
+    /** @return Number of orphans replaced, not admitted or dropped because of a conflict */
+    public long getNumConflicts() {
+        return this.numConflicts;
+    }
+
+    /** @return Number of epochs handled */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Keep a rejected transaction as orphan if it claims outputs that are not in the UTXO pool.
+     * Transactions claiming only available outputs, or outputs known to be spent, were rejected for good,
+     * as were transactions failing the checks that do not need the claimed outputs.
+     * @param tx Rejected transaction
+     * @param acceptedHashes Hashes of the transactions accepted in this epoch
+     * @param spent Outputs spent in this epoch
+     */
+    private void addOrphan(Transaction tx, HashSet<ByteBuffer> acceptedHashes, HashSet<UTXO> spent) {
+
+        ByteBuffer key = ByteBuffer.wrap(tx.getHash());
+        if (this.maxOrphans == 0 || this.orphans.containsKey(key)) {
+            return;
+        }
+
+        // Malformed transactions must neither take up orphan slots nor replace valid orphans
+        if (!TxHandler.checkStructure(tx).isValid()) {
+            return;
+        }
+
+        List<UTXO> missing = new ArrayList<>();
+        for (TransactionInput input : tx.getInputs()) {
+
+            UTXO utxo = new UTXO(input.prevTxHash, input.outputIndex);
+            if (this.txHandler.utxoPool.contains(utxo) || missing.contains(utxo)) {
+                continue;
+            }
+            if (spent.contains(utxo) || acceptedHashes.contains(ByteBuffer.wrap(input.prevTxHash))) {
+                return;
+            }
+            missing.add(utxo);
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<Transaction> conflicts = this.conflictIndex.getConflicts(tx);
+        if (!conflicts.isEmpty()) {
+
+            if (!this.replacementPolicy.shouldReplace(tx, conflicts)) {
+
+                this.numConflicts++;
+                return;
+            }
+            for (Transaction conflict : conflicts) {
+
+                this.removeOrphan(this.orphans.get(ByteBuffer.wrap(conflict.getHash())));
+                this.numConflicts++;
+            }
+        }
+
+        Orphan orphan = new Orphan(key, tx, missing, this.epoch);
+        this.orphans.put(key, orphan);
+        this.conflictIndex.add(tx);
+        for (UTXO utxo : missing) {
+            this.orphansByOutpoint.computeIfAbsent(utxo, u -> new ArrayList<>(1)).add(orphan);
+        }
+
+        // Evict the oldest orphans first
+        while (this.orphans.size() > this.maxOrphans) {
+
+            this.removeOrphan(this.orphans.values().iterator().next());
+            this.numEvicted++;
+        }
+    }
+
+    /**
+     * Drop the orphans claiming outpoints spent by an accepted transaction, they can never become valid
+     * @param tx Accepted transaction
+     */
+    private void dropConflicts(Transaction tx) {
+
+        for (Transaction conflict : this.conflictIndex.getConflicts(tx)) {
+
+            this.removeOrphan(this.orphans.get(ByteBuffer.wrap(conflict.getHash())));
+            this.numConflicts++;
+        }
+    }
+
+    /**
+     * Evict the orphans that have waited for more than {@code maxOrphanAge} epochs
+     */
+    private void evictExpired() {
+
+        Iterator<Orphan> oldest = this.orphans.values().iterator();
+        while (oldest.hasNext()) {
+
+            Orphan orphan = oldest.next();
+            if (this.epoch - orphan.epoch <= this.maxOrphanAge) {
+                // Orphans are in order of arrival
+                break;
+            }
+            oldest.remove();
+            this.unindex(orphan);
+            this.numEvicted++;
+        }
+        if (this.numEvicted > 0 && logger.isDebugEnabled()) {
+            logger.debug(String.format("Epoch %d: %d orphans waiting, %d evicted and %d conflicts so far",
+                    this.epoch, this.orphans.size(), this.numEvicted, this.numConflicts));
+        }
+    }
+
+    /**
+     * Remove an orphan and all its index entries
+     */
+    private void removeOrphan(Orphan orphan) {
+
+        this.orphans.remove(orphan.key);
+        this.unindex(orphan);
+    }
+
+    /**
+     * Remove an orphan from the index of the outpoints it is still missing and from the conflict index
+     */
+    private void unindex(Orphan orphan) {
+
+        for (UTXO utxo : orphan.missing) {
+
+            List<Orphan> waiting = this.orphansByOutpoint.get(utxo);
+            if (waiting != null && waiting.remove(orphan) && waiting.isEmpty()) {
+                this.orphansByOutpoint.remove(utxo);
+            }
+        }
+        this.conflictIndex.remove(orphan.tx);
+    }
+
+    /**
+     * Transaction waiting for the outputs it claims
+     */
+    private static final class Orphan {
+
+        final ByteBuffer key;
+        final Transaction tx;
+        final List<UTXO> missing;
+        final long epoch;
+
+        /** Number of missing outpoints that have not been created yet */
+        int numMissing;
+
+        Orphan(ByteBuffer key, Transaction tx, List<UTXO> missing, long epoch) {
+
+            this.key = key;
+            this.tx = tx;
+            this.missing = missing;
+            this.epoch = epoch;
+            this.numMissing = missing.size();
+        }
+    }
+}
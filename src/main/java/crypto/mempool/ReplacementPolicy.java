@@ -0,0 +1,75 @@
+package crypto.mempool;
+
+import crypto.transaction.Transaction;
+import crypto.transaction.TransactionInput;
+import crypto.transaction.TransactionOutput;
+import crypto.transaction.UTXO;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides whether a transaction replaces the pending transactions it conflicts with
+ */
+@FunctionalInterface
+public interface ReplacementPolicy {
+
+    /** Pending transactions are never replaced */
+    ReplacementPolicy FIRST_SEEN = (candidate, conflicts) -> false;
+
+    /** A new transaction always replaces the pending ones */
+    ReplacementPolicy LAST_SEEN = (candidate, conflicts) -> true;
+
+    /**
+     * Replace a transaction claiming exactly the same outpoints if it pays out less, i.e. leaves a higher fee.
+     * Transactions with a negative output or outputs overflowing a long never replace nor are replaced.
+     */
+    ReplacementPolicy HIGHER_FEE = (candidate, conflicts) -> {
+
+        if (conflicts.size() != 1 || !claimedOutpoints(candidate).equals(claimedOutpoints(conflicts.get(0)))) {
+            return false;
+        }
+        long candidateOutput = outputSum(candidate);
+        long pendingOutput = outputSum(conflicts.get(0));
+        return candidateOutput >= 0 && pendingOutput >= 0 && candidateOutput < pendingOutput;
+    };
+
+    /**
+     * @param candidate Transaction to be admitted
+     * @param conflicts Pending transactions claiming at least one of the outpoints claimed by {@code candidate}
+     * @return True if the conflicting transactions are dropped in favour of {@code candidate}
+     */
+    boolean shouldReplace(Transaction candidate, List<Transaction> conflicts);
+
+    /**
+     * @param tx Transaction
+     * @return Sum of the output values of {@code tx}, -1 if a value is negative or the sum overflows
+     */
+    static long outputSum(Transaction tx) {
+
+        long total = 0;
+        for (TransactionOutput output : tx.getOutputs()) {
+
+            // Both terms are non-negative unless the value is, so the sum overflowed iff it is negative
+            total += output.value;
+            if (output.value < 0 || total < 0) {
+                return -1;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param tx Transaction
+     * @return Outpoints claimed by the inputs of {@code tx}
+     */
+    static Set<UTXO> claimedOutpoints(Transaction tx) {
+
+        Set<UTXO> utxos = new HashSet<>();
+        for (TransactionInput input : tx.getInputs()) {
+            utxos.add(new UTXO(input.prevTxHash, input.outputIndex));
+        }
+        return utxos;
+    }
+}
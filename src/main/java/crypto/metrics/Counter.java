@@ -0,0 +1,48 @@
+package crypto.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. Increments are striped over several cells ({@link LongAdder}), so that
+ * threads counting concurrently do not contend on a single memory location.
+ */
+public class Counter {
+
+    /** Counter of a disabled {@link Metrics} registry, ignores all increments */
+    static final Counter DISABLED = new Counter() {
+
+        @Override
+        public void increment() {
+        }
+
+        @Override
+        public void add(long delta) {
+        }
+    };
+
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    /**
+     * Increment the counter by one
+     */
+    public void increment() {
+
+        this.count.increment();
+    }
+
+    /**
+     * @param delta Non-negative amount added to the counter
+     */
+    public void add(long delta) {
+
+        this.count.add(delta);
+    }
+
+    /** @return Current count */
+    public long get() {
+        return this.count.sum();
+    }
+}
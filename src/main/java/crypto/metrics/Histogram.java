@@ -0,0 +1,203 @@
+package crypto.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative long values (e.g. latencies in nanoseconds) in the spirit of an
+ * HdrHistogram: each power of two is split into {@code 2^SUB_BUCKET_BITS} linear sub-buckets, so
+ * every recorded value is known with a relative error below 1 / 2^SUB_BUCKET_BITS over the whole
+ * range of a long, using a fixed array of counts. Counts are striped by thread to keep concurrent
+ * recording cheap.
+ */
+public class Histogram {
+
+    /** Histogram of a disabled {@link Metrics} registry, neither records nor reads the clock */
+    static final Histogram DISABLED = new Histogram(1) {
+
+        @Override
+        public void record(long value) {
+        }
+
+        @Override
+        public long start() {
+            return 0;
+        }
+
+        @Override
+        public void stop(long start) {
+        }
+    };
+
+    /** Relative precision of 1 / 16 */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Enough buckets for the largest long */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private static final int DEFAULT_STRIPES = 4;
+
+    /** Bucket counts, one array per stripe */
+    private final AtomicLongArray[] stripes;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+
+        this(DEFAULT_STRIPES);
+    }
+
+    private Histogram(int numStripes) {
+
+        this.stripes = new AtomicLongArray[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            this.stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+        }
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     * @param value Value
+     */
+    public void record(long value) {
+
+        value = Math.max(value, 0);
+        int stripe = (int) Thread.currentThread().getId() & (this.stripes.length - 1);
+        this.stripes[stripe].incrementAndGet(bucketIndex(value));
+        this.count.increment();
+        this.sum.add(value);
+    }
+
+    /**
+     * Start timing, e.g. {@code long start = histogram.start(); ...; histogram.stop(start);}
+     * @return Start time in nanoseconds
+     */
+    public long start() {
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the nanoseconds elapsed since {@code start}
+     * @param start Value returned by {@link #start()}
+     */
+    public void stop(long start) {
+
+        this.record(System.nanoTime() - start);
+    }
+
+    /**
+     * @return Consistent copy of the counts, computing the statistics
+     */
+    public Snapshot snapshot() {
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (AtomicLongArray stripe : this.stripes) {
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+
+                long c = stripe.get(b);
+                counts[b] += c;
+                total += c;
+            }
+        }
+        // The sum may lag behind or run ahead of the buckets while values are recorded
+        return new Snapshot(counts, total, total == 0 ? 0 : (double) this.sum.sum() / this.count.sum());
+    }
+
+    /**
+     * Bucket of a value: values below {@code SUB_BUCKET_COUNT} have a bucket each, larger values
+     * are identified by the position of their highest bit and the {@code SUB_BUCKET_BITS} bits below it
+     */
+    static int bucketIndex(long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return Smallest value of bucket {@code index}
+     */
+    static long lowestValue(int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return Largest value of bucket {@code index}
+     */
+    static long highestValue(int index) {
+
+        return index + 1 < BUCKET_COUNT ? lowestValue(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Counts of a histogram at one point in time
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final double mean;
+
+        private Snapshot(long[] counts, long count, double mean) {
+
+            this.counts = counts;
+            this.count = count;
+            this.mean = mean;
+        }
+
+        /** @return Number of recorded values */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return Mean of the recorded values */
+        public double getMean() {
+            return mean;
+        }
+
+        /** @return Upper bound of the largest recorded value, 0 if none was recorded */
+        public long getMax() {
+
+            for (int b = this.counts.length - 1; b >= 0; b--) {
+                if (this.counts[b] > 0) {
+                    return highestValue(b);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the value below or at which {@code percentile} percent of the recorded values are
+         */
+        public long getValueAtPercentile(double percentile) {
+
+            if (this.count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+            long seen = 0;
+            for (int b = 0; b < this.counts.length; b++) {
+
+                seen += this.counts[b];
+                if (seen >= rank) {
+                    return highestValue(b);
+                }
+            }
+            return this.getMax();
+        }
+    }
+}
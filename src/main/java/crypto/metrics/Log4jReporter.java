@@ -0,0 +1,57 @@
+package crypto.metrics;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+
+/**
+ * Logs one line per instrument
+ */
+public class Log4jReporter implements MetricsReporter {
+
+    private final Logger logger;
+    private final Level level;
+
+    /**
+     * Report to the logger of this class at INFO level
+     */
+    public Log4jReporter() {
+
+        this(Logger.getLogger(Log4jReporter.class), Level.INFO);
+    }
+
+    /**
+     * @param logger Logger
+     * @param level Level the metrics are logged at
+     */
+    public Log4jReporter(Logger logger, Level level) {
+
+        this.logger = logger;
+        this.level = level;
+    }
+
+    @Override
+    public void report(MetricsSnapshot snapshot) {
+
+        if (!this.logger.isEnabledFor(this.level)) {
+            return;
+        }
+
+        for (Map.Entry<String, Long> counter : snapshot.getCounters().entrySet()) {
+            this.logger.log(this.level, String.format("%s count=%d", counter.getKey(), counter.getValue()));
+        }
+
+        for (Map.Entry<String, Histogram.Snapshot> entry : snapshot.getHistograms().entrySet()) {
+
+            Histogram.Snapshot histogram = entry.getValue();
+            StringBuilder line = new StringBuilder(String.format("%s count=%d mean=%.1f max=%d",
+                    entry.getKey(), histogram.getCount(), histogram.getMean(), histogram.getMax()));
+            for (double percentile : MetricsSnapshot.PERCENTILES) {
+                line.append(String.format(" p%s=%d", MetricsSnapshot.formatPercentile(percentile),
+                        histogram.getValueAtPercentile(percentile)));
+            }
+            this.logger.log(this.level, line.toString());
+        }
+    }
+}
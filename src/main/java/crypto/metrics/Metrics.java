@@ -0,0 +1,87 @@
+package crypto.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of named counters and histograms.
+ * Components look up their instruments once, e.g. when the registry is set, and update them on the
+ * hot path. The instruments of {@link #DISABLED} do nothing and do not read the clock, so that
+ * instrumented code costs next to nothing unless metrics are enabled.
+ */
+public class Metrics {
+
+    /** Registry handing out instruments that do nothing */
+    public static final Metrics DISABLED = new Metrics(false);
+
+    private final boolean enabled;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Create an enabled registry
+     */
+    public Metrics() {
+
+        this(true);
+    }
+
+    private Metrics(boolean enabled) {
+
+        this.enabled = enabled;
+    }
+
+    /** @return False for {@link #DISABLED} */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param name Name of the counter, e.g. {@code txhandler.accepted}
+     * @return The counter registered under {@code name}, created if needed
+     */
+    public Counter counter(String name) {
+
+        if (!this.enabled) {
+            return Counter.DISABLED;
+        }
+        return this.counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * @param name Name of the histogram, e.g. {@code txhandler.signature.nanos}
+     * @return The histogram registered under {@code name}, created if needed
+     */
+    public Histogram histogram(String name) {
+
+        if (!this.enabled) {
+            return Histogram.DISABLED;
+        }
+        return this.histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * @return Current values of all instruments, ordered by name
+     */
+    public MetricsSnapshot snapshot() {
+
+        TreeMap<String, Long> counters = new TreeMap<>();
+        this.counters.forEach((name, counter) -> counters.put(name, counter.get()));
+
+        TreeMap<String, Histogram.Snapshot> histograms = new TreeMap<>();
+        this.histograms.forEach((name, histogram) -> histograms.put(name, histogram.snapshot()));
+
+        return new MetricsSnapshot(counters, histograms);
+    }
+
+    /**
+     * Pass a snapshot of the current values to a reporter
+     * @param reporter Reporter
+     */
+    public void report(MetricsReporter reporter) {
+
+        reporter.report(this.snapshot());
+    }
+}
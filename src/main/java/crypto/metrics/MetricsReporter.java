@@ -0,0 +1,13 @@
+package crypto.metrics;
+
+/**
+ * Receives snapshots of a {@link Metrics} registry, see {@link Metrics#report(MetricsReporter)}
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    /**
+     * @param snapshot Values of all instruments
+     */
+    void report(MetricsSnapshot snapshot);
+}
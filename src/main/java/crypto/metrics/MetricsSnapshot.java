@@ -0,0 +1,94 @@
+package crypto.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Values of all instruments of a {@link Metrics} registry at one point in time
+ */
+public class MetricsSnapshot {
+
+    /** Percentiles reported for each histogram */
+    static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final SortedMap<String, Long> counters;
+    private final SortedMap<String, Histogram.Snapshot> histograms;
+
+    MetricsSnapshot(SortedMap<String, Long> counters, SortedMap<String, Histogram.Snapshot> histograms) {
+
+        this.counters = counters;
+        this.histograms = histograms;
+    }
+
+    /** @return Counter values by name */
+    public SortedMap<String, Long> getCounters() {
+        return counters;
+    }
+
+    /** @return Histogram snapshots by name */
+    public SortedMap<String, Histogram.Snapshot> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * @param name Name of a counter
+     * @return Value of the counter, 0 if it does not exist
+     */
+    public long getCounter(String name) {
+
+        return this.counters.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Serialize the snapshot, e.g.
+     * {@code {"counters":{"a":1},"histograms":{"b":{"count":2,"mean":3.0,"max":4,"p50":3,...}}}}
+     * @return JSON object
+     */
+    public String toJson() {
+
+        StringBuilder json = new StringBuilder("{\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> counter : this.counters.entrySet()) {
+
+            json.append(separator).append(quote(counter.getKey())).append(':').append(counter.getValue());
+            separator = ",";
+        }
+
+        json.append("},\"histograms\":{");
+        separator = "";
+        for (Map.Entry<String, Histogram.Snapshot> entry : this.histograms.entrySet()) {
+
+            Histogram.Snapshot histogram = entry.getValue();
+            json.append(separator).append(quote(entry.getKey()))
+                .append(":{\"count\":").append(histogram.getCount())
+                .append(",\"mean\":").append(String.format(Locale.ROOT, "%.1f", histogram.getMean()))
+                .append(",\"max\":").append(histogram.getMax());
+            for (double percentile : PERCENTILES) {
+                json.append(",\"p").append(formatPercentile(percentile)).append("\":")
+                    .append(histogram.getValueAtPercentile(percentile));
+            }
+            json.append('}');
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.toJson();
+    }
+
+    /**
+     * @return e.g. "50" or "99.9"
+     */
+    static String formatPercentile(double percentile) {
+
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static String quote(String name) {
+
+        return '"' + name.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
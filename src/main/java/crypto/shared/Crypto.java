@@ -3,48 +3,68 @@ package crypto.shared;
 import org.apache.log4j.Logger;
 
 import javax.xml.bind.DatatypeConverter;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 /**
- * Class with all kind of cryptographic functions
+ * Class with all kind of cryptographic functions.
+ * Signatures and hashes are delegated to a {@link CryptoEngine}, by default a {@link DefaultCryptoEngine}.
  */
 public class Crypto {
 
     private final static Logger logger = Logger.getLogger(Crypto.class);
 
-    private static final String algorithm = "SHA1withDSA";
-    private static final int keySize = 1024;
+    /** Number of addresses generated from one source of randomness by the parallel generator */
+    private static final int KEY_PAIR_CHUNK_SIZE = 64;
+
+    /** Engine the signatures and hashes are delegated to */
+    private static volatile CryptoEngine engine = new DefaultCryptoEngine();
+
+    /** Scheme of newly generated addresses, configured by the system property {@value SignatureScheme#PROPERTY} */
+    private static volatile SignatureScheme signatureScheme = SignatureScheme.fromSystemProperty();
 
     /**
      * Generate a given number of addresses (which consists of public/private key pairs)
+     * using the configured signature scheme
      * @param numberOfAddresses Number of addresses to be generated
      */
     public static List<KeyPair> generateRandomKeyPairs(int numberOfAddresses) {
 
+        return generateRandomKeyPairs(numberOfAddresses, signatureScheme);
+    }
+
+    /**
+     * Generate a given number of addresses (which consists of public/private key pairs)
+     * @param numberOfAddresses Number of addresses to be generated
+     * @param scheme Signature scheme of the addresses
+     */
+    public static List<KeyPair> generateRandomKeyPairs(int numberOfAddresses, SignatureScheme scheme) {
+
         List<KeyPair> keyPairs = new ArrayList<>();
         try {
 
-            KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance("DSA", "SUN");
-
             // Set key length and the source of randomness
             SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG", "SUN");
-            keyGenerator.initialize(keySize, secureRandom);
+            KeyPairGenerator keyGenerator = scheme.createKeyPairGenerator(secureRandom);
 
             for (int n = 0; n < numberOfAddresses; n++) {
 
                 KeyPair keyPair = keyGenerator.generateKeyPair();
 
-                logger.info(String.format("Generated new Address: (%s, %s)",
-                        DatatypeConverter.printHexBinary(keyPair.getPublic().getEncoded()),
-                        DatatypeConverter.printHexBinary(keyPair.getPrivate().getEncoded())));
-
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("Generated new Address: %s",
+                            DatatypeConverter.printHexBinary(keyPair.getPublic().getEncoded())));
+                }
                 keyPairs.add(keyPair);
             }
             return keyPairs;
 
-        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException e) {
 
             logger.error(String.format("Could not create addresses as the following error occurred: %s",
                     e.getMessage()));
@@ -55,25 +75,84 @@ public class Crypto {
     }
 
     /**
-     * Generate a Hash for the given data
-     * @param data Data
-     * @return Hash
+     * Generate a given number of addresses in parallel, for real keys. The addresses are generated in
+     * chunks, each from its own {@code SHA1PRNG} seeded by a {@link SecureRandom}.
+     * @param numberOfAddresses Number of addresses to be generated
+     * @param scheme Signature scheme of the addresses
+     * @return Generated addresses
      */
-    public static byte[] generateHash(byte[] data) {
-        try {
+    public static List<KeyPair> generateRandomKeyPairsInParallel(int numberOfAddresses, SignatureScheme scheme) {
+
+        SecureRandom seeds = new SecureRandom();
+        return generateKeyPairsInParallel(numberOfAddresses, scheme, chunk -> {
+
+            byte[] seed = new byte[32];
+            seeds.nextBytes(seed);
+            return seed;
+        });
+    }
 
-            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+    /**
+     * Generate a given number of addresses in parallel from a seed, for test and benchmark fixtures only.
+     * The addresses are generated in chunks, each from its own {@code SHA1PRNG} seeded with {@code seed}
+     * and the index of the chunk, hence the result only depends on the seed and not on the number of
+     * threads. Anyone knowing the seed can recompute the private keys, never use them for real funds.
+     * @param numberOfAddresses Number of addresses to be generated
+     * @param scheme Signature scheme of the addresses
+     * @param seed Seed of the randomness
+     * @return Generated addresses
+     */
+    public static List<KeyPair> generateDeterministicKeyPairs(int numberOfAddresses, SignatureScheme scheme, long seed) {
+
+        return generateKeyPairsInParallel(numberOfAddresses, scheme,
+                chunk -> ByteBuffer.allocate(2 * Long.BYTES).putLong(seed).putLong(chunk).array());
+    }
 
-            messageDigest.update(data);
+    /**
+     * @param numberOfAddresses Number of addresses to be generated
+     * @param scheme Signature scheme of the addresses
+     * @param seeds Seed of the {@code SHA1PRNG} of each chunk
+     * @return Generated addresses
+     */
+    private static List<KeyPair> generateKeyPairsInParallel(int numberOfAddresses, SignatureScheme scheme,
+                                                            IntFunction<byte[]> seeds) {
 
-            return messageDigest.digest();
+        int numChunks = (numberOfAddresses + KEY_PAIR_CHUNK_SIZE - 1) / KEY_PAIR_CHUNK_SIZE;
+        KeyPair[] keyPairs = new KeyPair[numberOfAddresses];
 
-        } catch (NoSuchAlgorithmException exception) {
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
 
-            exception.printStackTrace(System.err);
+            try {
 
-            return null;
-        }
+                // Seeding before the first output replaces the self-seeding of SHA1PRNG
+                SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG", "SUN");
+                secureRandom.setSeed(seeds.apply(chunk));
+                KeyPairGenerator keyGenerator = scheme.createKeyPairGenerator(secureRandom);
+
+                int end = Math.min(numberOfAddresses, (chunk + 1) * KEY_PAIR_CHUNK_SIZE);
+                for (int n = chunk * KEY_PAIR_CHUNK_SIZE; n < end; n++) {
+                    keyPairs[n] = keyGenerator.generateKeyPair();
+                }
+
+            } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException e) {
+
+                throw new IllegalStateException(String.format(
+                        "Could not create addresses as the following error occurred: %s", e.getMessage()), e);
+            }
+        });
+
+        logger.info(String.format("Generated %d %s addresses", numberOfAddresses, scheme));
+        return Arrays.asList(keyPairs);
+    }
+
+    /**
+     * Generate a Hash for the given data
+     * @param data Data
+     * @return Hash
+     */
+    public static byte[] generateHash(byte[] data) {
+
+        return engine.generateHash(data);
     }
 
     /**
@@ -84,31 +163,12 @@ public class Crypto {
      */
     public static byte[] sign(PrivateKey privateKey, byte[] message) {
 
-        try {
-            // Get signature object for creating and verifying signatures
-            // DSA = digital signature algorithm
-            Signature dsa = Signature.getInstance(algorithm);
-            dsa.initSign(privateKey);
-            dsa.update(message);
-
-            return dsa.sign();
-
-        } catch (InvalidKeyException |
-                 SignatureException |
-                 NoSuchAlgorithmException e) {
-
-            logger.error(String.format("Could not create signature: %s", e.getMessage()));
-            e.printStackTrace();
-            return null;
-        }
-
-
+        return engine.sign(privateKey, message);
     }
 
     /**
      * This method takes a public key, a message and a signature, and returns true if and only if
      * the signature correctly verifies over message with the public key publicKey.
-     * Internally, this uses RSA signature
      * @param publicKey Public key
      * @param message Message that was signed
      * @param signature Signature
@@ -116,39 +176,40 @@ public class Crypto {
      */
     public static boolean verifySignature(PublicKey publicKey, byte[] message, byte[] signature) {
 
-        Signature dsa;
-
-        try {
-
-            dsa = Signature.getInstance(algorithm);
-
-        } catch (NoSuchAlgorithmException e) {
-
-            e.printStackTrace();
-
-            return false;
-        }
-
-        try {
-
-            dsa.initVerify(publicKey);
+        return engine.verifySignature(publicKey, message, signature);
+    }
 
-        } catch (InvalidKeyException e) {
+    /**
+     * @return Scheme of newly generated addresses
+     */
+    public static SignatureScheme getSignatureScheme() {
 
-            e.printStackTrace();
+        return signatureScheme;
+    }
 
-        }
+    /**
+     * Select the scheme of newly generated addresses
+     * @param scheme Signature scheme
+     */
+    public static void setSignatureScheme(SignatureScheme scheme) {
 
-        try {
+        signatureScheme = scheme;
+    }
 
-            dsa.update(message);
+    /**
+     * @return The engine the static methods of this class delegate to
+     */
+    public static CryptoEngine getEngine() {
 
-            return dsa.verify(signature);
+        return engine;
+    }
 
-        } catch (SignatureException e) {
+    /**
+     * Replace the engine the static methods of this class delegate to
+     * @param cryptoEngine Crypto engine
+     */
+    public static void setEngine(CryptoEngine cryptoEngine) {
 
-            e.printStackTrace();
-        }
-        return false;
+        engine = cryptoEngine;
     }
 }
@@ -0,0 +1,88 @@
+package crypto.shared;
+
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * Cryptographic primitives used by the ledger: signatures and hashes.
+ * The batch methods process independent items and may spread them across threads.
+ */
+public interface CryptoEngine {
+
+    /**
+     * Sign a message with given private key
+     * @param privateKey Private key
+     * @param message Message
+     * @return Signature, or null if the message could not be signed
+     */
+    byte[] sign(PrivateKey privateKey, byte[] message);
+
+    /**
+     * Returns true if and only if the signature correctly verifies over message with the public key publicKey.
+     * @param publicKey Public key
+     * @param message Message that was signed
+     * @param signature Signature
+     * @return True if signature is valid signature of the message under the key, otherwise false
+     */
+    boolean verifySignature(PublicKey publicKey, byte[] message, byte[] signature);
+
+    /**
+     * Generate a Hash for the given data
+     * @param data Data
+     * @return Hash
+     */
+    byte[] generateHash(byte[] data);
+
+    /**
+     * Digest to stream data into that is to be hashed. The digest is reset and owned by the calling
+     * thread, it must not be kept beyond computing a single hash.
+     * @return Message digest
+     */
+    MessageDigest getHashDigest();
+
+    /**
+     * Sign each message with the corresponding private key
+     * @param privateKeys Private keys
+     * @param messages Messages
+     * @return {@code signatures[i]} is the signature of {@code messages[i]}
+     */
+    default byte[][] signAll(PrivateKey[] privateKeys, byte[][] messages) {
+
+        byte[][] signatures = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            signatures[i] = this.sign(privateKeys[i], messages[i]);
+        }
+        return signatures;
+    }
+
+    /**
+     * Verify each signature over the corresponding message and public key
+     * @param publicKeys Public keys
+     * @param messages Messages that were signed
+     * @param signatures Signatures
+     * @return {@code valid[i]} is true iff {@code signatures[i]} is a valid signature of {@code messages[i]}
+     */
+    default boolean[] verifyAll(PublicKey[] publicKeys, byte[][] messages, byte[][] signatures) {
+
+        boolean[] valid = new boolean[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            valid[i] = this.verifySignature(publicKeys[i], messages[i], signatures[i]);
+        }
+        return valid;
+    }
+
+    /**
+     * Hash each of the given data
+     * @param data Data
+     * @return {@code hashes[i]} is the hash of {@code data[i]}
+     */
+    default byte[][] hashAll(byte[][] data) {
+
+        byte[][] hashes = new byte[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            hashes[i] = this.generateHash(data[i]);
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,112 @@
+package crypto.shared;
+
+import org.apache.log4j.Logger;
+
+import java.security.*;
+
+/**
+ * Crypto engine keeping one pre-initialized {@code Signature} per signature scheme and one {@code MessageDigest}
+ * per thread, so that the providers are looked up once per thread rather than once per call.
+ * The scheme of a signature is selected by the algorithm of the key.
+ */
+public class DefaultCryptoEngine implements CryptoEngine {
+
+    private final static Logger logger = Logger.getLogger(DefaultCryptoEngine.class);
+
+    private static final String hashAlgorithm = "SHA-256";
+
+    /** Signatures of the calling thread, indexed by the ordinal of their scheme and created on first use */
+    private final ThreadLocal<Signature[]> signatures =
+            ThreadLocal.withInitial(() -> new Signature[SignatureScheme.values().length]);
+
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(hashAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @Override
+    public byte[] sign(PrivateKey privateKey, byte[] message) {
+
+        try {
+
+            Signature dsa = this.getSignature(SignatureScheme.of(privateKey));
+            dsa.initSign(privateKey);
+            dsa.update(message);
+
+            return dsa.sign();
+
+        } catch (InvalidKeyException |
+                 SignatureException |
+                 NoSuchAlgorithmException |
+                 IllegalArgumentException e) {
+
+            logger.error(String.format("Could not create signature: %s", e.getMessage()));
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public boolean verifySignature(PublicKey publicKey, byte[] message, byte[] signature) {
+
+        Signature dsa;
+
+        try {
+
+            dsa = this.getSignature(SignatureScheme.of(publicKey));
+            dsa.initVerify(publicKey);
+
+        } catch (InvalidKeyException | NoSuchAlgorithmException | IllegalArgumentException e) {
+
+            e.printStackTrace();
+            return false;
+        }
+
+        try {
+
+            dsa.update(message);
+
+            return dsa.verify(signature);
+
+        } catch (SignatureException e) {
+
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] generateHash(byte[] data) {
+
+        MessageDigest messageDigest = this.getHashDigest();
+        return messageDigest.digest(data);
+    }
+
+    /**
+     * Signature object of the calling thread for a scheme
+     * @param scheme Signature scheme
+     * @return Signature object, to be initialized for signing or verification
+     */
+    private Signature getSignature(SignatureScheme scheme) throws NoSuchAlgorithmException {
+
+        Signature[] threadSignatures = this.signatures.get();
+        Signature signature = threadSignatures[scheme.ordinal()];
+        if (signature == null) {
+
+            signature = Signature.getInstance(scheme.getSignatureAlgorithm());
+            threadSignatures[scheme.ordinal()] = signature;
+        }
+        return signature;
+    }
+
+    @Override
+    public MessageDigest getHashDigest() {
+
+        MessageDigest messageDigest = this.digests.get();
+        messageDigest.reset();
+        return messageDigest;
+    }
+}
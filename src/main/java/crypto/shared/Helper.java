@@ -18,4 +18,18 @@ public class Helper {
         }
         return rawBytes;
     }
+
+    /**
+     * Convert array of bytes into list
+     * @param rawBytes Array of bytes
+     * @return List of bytes
+     */
+    public static ArrayList<Byte> convertToByteList(byte[] rawBytes) {
+
+        ArrayList<Byte> bytes = new ArrayList<>(rawBytes.length);
+        for (byte b : rawBytes) {
+            bytes.add(b);
+        }
+        return bytes;
+    }
 }
@@ -0,0 +1,219 @@
+package crypto.shared;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary file of key pairs, read through a memory mapping.
+ * Layout: magic, number of key pairs, then per key pair the ordinal of its {@link SignatureScheme},
+ * the length and bytes of the X.509 encoded public key and the length and bytes of the PKCS #8 encoded
+ * private key. Key pairs are decoded on access, so opening a store only scans the record lengths.
+ */
+public class KeyPairStore {
+
+    private final static Logger logger = Logger.getLogger(KeyPairStore.class);
+
+    /** "KEYS" */
+    private static final int MAGIC = 0x4B455953;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** Mapped content of the file */
+    private final MappedByteBuffer buffer;
+
+    /** Offset of each record in the file */
+    private final int[] offsets;
+
+    private KeyPairStore(MappedByteBuffer buffer) throws IOException {
+
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a key pair store");
+        }
+        this.offsets = new int[buffer.getInt(Integer.BYTES)];
+
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < this.offsets.length; i++) {
+
+            this.offsets[i] = offset;
+            int publicLength = buffer.getInt(offset + 1);
+            int privateLength = buffer.getInt(offset + 1 + Integer.BYTES + publicLength);
+            offset += 1 + 2 * Integer.BYTES + publicLength + privateLength;
+        }
+    }
+
+    /**
+     * Open a key pair store
+     * @param file Store file
+     * @return Key pair store
+     * @throws IOException If the file cannot be read or is not a key pair store
+     */
+    public static KeyPairStore open(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            // The mapping stays valid after the channel has been closed
+            return new KeyPairStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+        } catch (IndexOutOfBoundsException e) {
+
+            throw new IOException(String.format("Key pair store %s is truncated", file), e);
+        }
+    }
+
+    /**
+     * Write key pairs to a store file, replacing it atomically if it exists
+     * @param file Store file
+     * @param keyPairs Key pairs
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(Path file, List<KeyPair> keyPairs) throws IOException {
+
+        int size = HEADER_SIZE;
+        List<byte[]> encoded = new ArrayList<>(2 * keyPairs.size());
+        for (KeyPair keyPair : keyPairs) {
+
+            byte[] publicKey = keyPair.getPublic().getEncoded();
+            byte[] privateKey = keyPair.getPrivate().getEncoded();
+            encoded.add(publicKey);
+            encoded.add(privateKey);
+            size += 1 + 2 * Integer.BYTES + publicKey.length + privateKey.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(keyPairs.size());
+        for (int i = 0; i < keyPairs.size(); i++) {
+
+            buffer.put((byte) SignatureScheme.of(keyPairs.get(i).getPublic()).ordinal());
+            for (byte[] key : encoded.subList(2 * i, 2 * i + 2)) {
+                buffer.putInt(key.length);
+                buffer.put(key);
+            }
+        }
+        buffer.flip();
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Open the store if it holds enough key pairs of the scheme, otherwise generate the key pairs
+     * in parallel and write them to the store first. Meant for test and benchmark fixtures.
+     * @param file Store file
+     * @param numberOfAddresses Number of key pairs needed
+     * @param scheme Signature scheme of the key pairs
+     * @param seed Seed used if the key pairs have to be generated
+     * @return Key pair store holding at least {@code numberOfAddresses} key pairs
+     * @throws IOException If the file cannot be read or written
+     */
+    public static KeyPairStore openOrGenerate(Path file, int numberOfAddresses, SignatureScheme scheme, long seed)
+            throws IOException {
+
+        if (Files.exists(file)) {
+
+            try {
+
+                KeyPairStore store = open(file);
+                if (store.size() >= numberOfAddresses &&
+                        (store.size() == 0 || store.getScheme(0) == scheme)) {
+                    return store;
+                }
+
+            } catch (IOException e) {
+
+                logger.warn(String.format("Regenerating key pair store %s: %s", file, e.getMessage()));
+            }
+        }
+
+        write(file, Crypto.generateDeterministicKeyPairs(numberOfAddresses, scheme, seed));
+        return open(file);
+    }
+
+    /** @return Number of key pairs in the store */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @param index Index of the key pair
+     * @return Signature scheme of the key pair
+     */
+    public SignatureScheme getScheme(int index) {
+
+        return SignatureScheme.values()[this.buffer.get(this.offsets[index])];
+    }
+
+    /**
+     * Decode a key pair
+     * @param index Index of the key pair
+     * @return Key pair
+     */
+    public KeyPair get(int index) {
+
+        int offset = this.offsets[index];
+        SignatureScheme scheme = this.getScheme(index);
+
+        byte[] publicKey = new byte[this.buffer.getInt(offset + 1)];
+        offset += 1 + Integer.BYTES;
+        this.read(offset, publicKey);
+        offset += publicKey.length;
+
+        byte[] privateKey = new byte[this.buffer.getInt(offset)];
+        this.read(offset + Integer.BYTES, privateKey);
+
+        try {
+
+            return new KeyPair(scheme.decodePublicKey(publicKey), scheme.decodePrivateKey(privateKey));
+
+        } catch (GeneralSecurityException e) {
+
+            throw new IllegalStateException(String.format("Key pair %d cannot be decoded: %s", index, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Decode the first key pairs of the store
+     * @param count Number of key pairs
+     * @return Key pairs
+     */
+    public List<KeyPair> getKeyPairs(int count) {
+
+        List<KeyPair> keyPairs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keyPairs.add(this.get(i));
+        }
+        return keyPairs;
+    }
+
+    private void read(int offset, byte[] target) {
+
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(offset);
+        view.get(target);
+    }
+}
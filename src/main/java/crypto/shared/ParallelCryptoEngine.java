@@ -0,0 +1,62 @@
+package crypto.shared;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Crypto engine spreading the batch operations across the threads of a fork-join pool.
+ * Single operations run on the calling thread.
+ */
+public class ParallelCryptoEngine extends DefaultCryptoEngine {
+
+    private final ForkJoinPool forkJoinPool;
+
+    /**
+     * Build engine running batches on the common pool
+     */
+    public ParallelCryptoEngine() {
+
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Build engine
+     * @param forkJoinPool Pool the batches are run on
+     */
+    public ParallelCryptoEngine(ForkJoinPool forkJoinPool) {
+
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    @Override
+    public byte[][] signAll(PrivateKey[] privateKeys, byte[][] messages) {
+
+        byte[][] signatures = new byte[messages.length][];
+        this.forkJoinPool.submit(() -> IntStream.range(0, messages.length).parallel()
+                .forEach(i -> signatures[i] = this.sign(privateKeys[i], messages[i])))
+                .join();
+        return signatures;
+    }
+
+    @Override
+    public boolean[] verifyAll(PublicKey[] publicKeys, byte[][] messages, byte[][] signatures) {
+
+        boolean[] valid = new boolean[messages.length];
+        this.forkJoinPool.submit(() -> IntStream.range(0, messages.length).parallel()
+                .forEach(i -> valid[i] = this.verifySignature(publicKeys[i], messages[i], signatures[i])))
+                .join();
+        return valid;
+    }
+
+    @Override
+    public byte[][] hashAll(byte[][] data) {
+
+        byte[][] hashes = new byte[data.length][];
+        this.forkJoinPool.submit(() -> IntStream.range(0, data.length).parallel()
+                .forEach(i -> hashes[i] = this.generateHash(data[i])))
+                .join();
+        return hashes;
+    }
+}
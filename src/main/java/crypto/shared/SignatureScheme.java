@@ -0,0 +1,121 @@
+package crypto.shared;
+
+import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Signature schemes addresses can use.
+ * An address is serialized as X.509 SubjectPublicKeyInfo ({@code PublicKey.getEncoded()}), which names the
+ * key algorithm, so the scheme of an address is determined by its key and both schemes can coexist on a ledger.
+ */
+public enum SignatureScheme {
+
+    /** DSA with 1024 bit keys and SHA-1, the original scheme */
+    DSA_1024("DSA", "SHA1withDSA", "SUN") {
+        @Override
+        void initialize(KeyPairGenerator keyGenerator, SecureRandom secureRandom) {
+            keyGenerator.initialize(1024, secureRandom);
+        }
+    },
+
+    /** ECDSA over the NIST P-256 curve (secp256r1) with SHA-256 */
+    ECDSA_P256("EC", "SHA256withECDSA", "SunEC") {
+        @Override
+        void initialize(KeyPairGenerator keyGenerator, SecureRandom secureRandom)
+                throws InvalidAlgorithmParameterException {
+            keyGenerator.initialize(new ECGenParameterSpec("secp256r1"), secureRandom);
+        }
+    };
+
+    /** Name of the system property selecting the scheme of new addresses */
+    public static final String PROPERTY = "crypto.signatureScheme";
+
+    /** Algorithm of the keys, as returned by {@code Key.getAlgorithm()} */
+    private final String keyAlgorithm;
+
+    /** Algorithm passed to {@code Signature.getInstance} */
+    private final String signatureAlgorithm;
+
+    /** Provider generating the keys */
+    private final String provider;
+
+    SignatureScheme(String keyAlgorithm, String signatureAlgorithm, String provider) {
+
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.provider = provider;
+    }
+
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /** Set key size or curve of a key pair generator of this scheme */
+    abstract void initialize(KeyPairGenerator keyGenerator, SecureRandom secureRandom)
+            throws InvalidAlgorithmParameterException;
+
+    /**
+     * Create a key pair generator for this scheme
+     * @param secureRandom Source of randomness
+     * @return Initialized key pair generator
+     */
+    public KeyPairGenerator createKeyPairGenerator(SecureRandom secureRandom)
+            throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException {
+
+        KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance(this.keyAlgorithm, this.provider);
+        this.initialize(keyGenerator, secureRandom);
+        return keyGenerator;
+    }
+
+    /**
+     * Decode an address of this scheme
+     * @param encoded X.509 encoded public key
+     * @return Public key
+     */
+    public PublicKey decodePublicKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+
+        return KeyFactory.getInstance(this.keyAlgorithm).generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    /**
+     * Decode a private key of this scheme
+     * @param encoded PKCS #8 encoded private key
+     * @return Private key
+     */
+    public PrivateKey decodePrivateKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+
+        return KeyFactory.getInstance(this.keyAlgorithm).generatePrivate(new PKCS8EncodedKeySpec(encoded));
+    }
+
+    /**
+     * Scheme of a key
+     * @param key Public or private key
+     * @return Signature scheme
+     * @throws IllegalArgumentException If no scheme uses the algorithm of the key
+     */
+    public static SignatureScheme of(Key key) {
+
+        for (SignatureScheme scheme : values()) {
+            if (scheme.keyAlgorithm.equals(key.getAlgorithm())) {
+                return scheme;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported key algorithm %s", key.getAlgorithm()));
+    }
+
+    /**
+     * Scheme selected by the system property {@value #PROPERTY}, {@link #DSA_1024} if it is not set
+     * @return Signature scheme
+     */
+    public static SignatureScheme fromSystemProperty() {
+
+        return valueOf(System.getProperty(PROPERTY, DSA_1024.name()));
+    }
+}
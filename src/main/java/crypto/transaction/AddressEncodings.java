@@ -0,0 +1,54 @@
+package crypto.transaction;
+
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonical X.509 encodings of the addresses in use. Every output paying the same key points to
+ * the same encoding instead of owning a copy, which is about 440 bytes for a DSA key. Entries are
+ * weakly keyed by the address and vanish once no output, pool or registry refers to the key.
+ */
+final class AddressEncodings {
+
+    private static final Map<PublicKey, byte[]> ENCODINGS = new WeakHashMap<>();
+
+    private AddressEncodings() {
+    }
+
+    /**
+     * @param address Public key, may be null
+     * @return Shared encoding of the address, null if it is null. It must not be modified.
+     */
+    static byte[] of(PublicKey address) {
+
+        if (address == null) {
+            return null;
+        }
+        synchronized (ENCODINGS) {
+
+            byte[] encoded = ENCODINGS.get(address);
+            if (encoded == null) {
+
+                encoded = address.getEncoded();
+                ENCODINGS.put(address, encoded);
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Make an encoding the shared one of its address, unless the address has one already
+     * @param address Public key
+     * @param encoded X.509 encoding of the address, must not be modified afterwards
+     * @return Shared encoding of the address
+     */
+    static byte[] intern(PublicKey address, byte[] encoded) {
+
+        synchronized (ENCODINGS) {
+
+            byte[] shared = ENCODINGS.putIfAbsent(address, encoded);
+            return shared == null ? encoded : shared;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package crypto.transaction;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Secondary index of a pool from address to the outpoints paying it and their total value.
+ * Entries are stored by the address id in the index's own {@link AddressRegistry}, which is
+ * compact, so the index is a plain array. Copies share the registry. Outputs without address are
+ * not indexed.
+ */
+class AddressIndex {
+
+    /** Ids of the indexed addresses */
+    private final AddressRegistry addresses;
+
+    /** Entries by address id, null if the address owns no UTXO */
+    private Entry[] entries;
+
+    AddressIndex() {
+
+        this.addresses = new AddressRegistry();
+        this.entries = new Entry[16];
+    }
+
+    /**
+     * Creates a deep copy of {@code other}
+     */
+    AddressIndex(AddressIndex other) {
+
+        this.addresses = other.addresses;
+        this.entries = new Entry[other.entries.length];
+        for (int id = 0; id < this.entries.length; id++) {
+
+            Entry entry = other.entries[id];
+            if (entry != null) {
+                this.entries[id] = new Entry(entry);
+            }
+        }
+    }
+
+    /**
+     * Index UTXO {@code utxo} paying {@code output}
+     */
+    void add(UTXO utxo, TransactionOutput output) {
+
+        int id = this.addresses.intern(output.address);
+        if (id == AddressRegistry.NO_ADDRESS) {
+            return;
+        }
+        if (id >= this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, Math.max(2 * this.entries.length, id + 1));
+        }
+        Entry entry = this.entries[id];
+        if (entry == null) {
+
+            entry = new Entry();
+            this.entries[id] = entry;
+        }
+        if (entry.utxos.add(utxo)) {
+            entry.balance += output.value;
+        }
+    }
+
+    /**
+     * Remove UTXO {@code utxo} that paid {@code output} from the index
+     */
+    void remove(UTXO utxo, TransactionOutput output) {
+
+        int id = this.addresses.getId(output.address);
+        Entry entry = this.getEntry(id);
+        if (entry == null || !entry.utxos.remove(utxo)) {
+            return;
+        }
+        entry.balance -= output.value;
+        if (entry.utxos.isEmpty()) {
+            this.entries[id] = null;
+        }
+    }
+
+    /**
+     * @param address Public key
+     * @return Unmodifiable view of the UTXOs paying the address
+     */
+    Set<UTXO> getUTXOs(PublicKey address) {
+
+        Entry entry = this.getEntry(this.addresses.getId(address));
+        return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.utxos);
+    }
+
+    /**
+     * @param address Public key
+     * @return Total value in base units of the UTXOs paying the address
+     */
+    long getBalance(PublicKey address) {
+
+        Entry entry = this.getEntry(this.addresses.getId(address));
+        return entry == null ? 0 : entry.balance;
+    }
+
+    private Entry getEntry(int addressId) {
+
+        return addressId < 0 || addressId >= this.entries.length ? null : this.entries[addressId];
+    }
+
+    /**
+     * Outpoints of one address and their running sum
+     */
+    private static final class Entry {
+
+        private final HashSet<UTXO> utxos;
+        private long balance;
+
+        Entry() {
+
+            this.utxos = new HashSet<>();
+        }
+
+        Entry(Entry other) {
+
+            this.utxos = new HashSet<>(other.utxos);
+            this.balance = other.balance;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package crypto.transaction;
+
+import crypto.shared.SignatureScheme;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry interning the addresses paid by transaction outputs.
+ * Every distinct public key is assigned a compact id, starting at 0, and its X.509 encoding is
+ * the shared one of {@link AddressEncodings}. A pool stores the id instead of the key and the outputs it hands out share the
+ * interned key and encoding, so a few thousand addresses paid by millions of outputs are held and
+ * encoded only once each.
+ * There is no global registry: each pool or store creates its own and ids are only meaningful
+ * there. Ids are never reassigned, the registry only grows and is released together with its
+ * owner, copies of a pool may share it. Lookups by id are lock free, registering a new address
+ * locks only this registry.
+ */
+public class AddressRegistry {
+
+    /** Id of a missing address */
+    public static final int NO_ADDRESS = -1;
+
+    private final ConcurrentHashMap<PublicKey, Integer> idsByAddress = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ByteBuffer, Integer> idsByEncoding = new ConcurrentHashMap<>();
+
+    /** Addresses and their encodings by id, reassigned after every registration to publish it */
+    private volatile PublicKey[] addresses = new PublicKey[16];
+    private volatile byte[][] encodings = new byte[16][];
+
+    private int size;
+
+    /**
+     * Return the id of an address, registering it if it is not known yet
+     * @param address Public key, may be null
+     * @return Id of the address, {@link #NO_ADDRESS} if it is null
+     */
+    public int intern(PublicKey address) {
+
+        if (address == null) {
+            return NO_ADDRESS;
+        }
+        Integer id = this.idsByAddress.get(address);
+        return id != null ? id : this.register(address, AddressEncodings.of(address));
+    }
+
+    /**
+     * Return the id of an encoded address, the encoding is decoded only if it is not known yet
+     * @param scheme Signature scheme of the address
+     * @param encoded X.509 encoding of the address, must not be modified afterwards
+     * @return Id of the address
+     * @throws GeneralSecurityException If the encoding is not a valid key of the scheme
+     */
+    public int intern(SignatureScheme scheme, byte[] encoded) throws GeneralSecurityException {
+
+        Integer id = this.idsByEncoding.get(ByteBuffer.wrap(encoded));
+        if (id != null) {
+            return id;
+        }
+        PublicKey address = scheme.decodePublicKey(encoded);
+        return this.register(address, AddressEncodings.intern(address, encoded));
+    }
+
+    /**
+     * @param address Public key, may be null
+     * @return Id of the address, {@link #NO_ADDRESS} if it has not been registered
+     */
+    public int getId(PublicKey address) {
+
+        Integer id = address == null ? null : this.idsByAddress.get(address);
+        return id == null ? NO_ADDRESS : id;
+    }
+
+    /**
+     * @param id Id of an address
+     * @return The address, null for {@link #NO_ADDRESS}
+     */
+    public PublicKey getAddress(int id) {
+
+        return id == NO_ADDRESS ? null : this.addresses[id];
+    }
+
+    /**
+     * @param id Id of an address
+     * @return X.509 encoding of the address, null for {@link #NO_ADDRESS}. The array is shared and must not be modified.
+     */
+    public byte[] getEncoded(int id) {
+
+        return id == NO_ADDRESS ? null : this.encodings[id];
+    }
+
+    /**
+     * @param id Id of an address
+     * @param value Value in base units
+     * @return New output paying {@code value} to the address, sharing its key and encoding
+     */
+    TransactionOutput newOutput(int id, long value) {
+
+        return new TransactionOutput(value, this.getAddress(id), this.getEncoded(id));
+    }
+
+    /** @return Number of registered addresses */
+    public synchronized int size() {
+
+        return this.size;
+    }
+
+    private synchronized int register(PublicKey address, byte[] encoded) {
+
+        Integer id = this.idsByAddress.get(address);
+        if (id != null) {
+            return id;
+        }
+        id = this.size;
+
+        PublicKey[] addresses = this.addresses;
+        byte[][] encodings = this.encodings;
+        if (id == addresses.length) {
+
+            addresses = Arrays.copyOf(addresses, 2 * id);
+            encodings = Arrays.copyOf(encodings, 2 * id);
+        }
+        addresses[id] = address;
+        encodings[id] = encoded;
+        this.encodings = encodings;
+        this.addresses = addresses;
+        this.size++;
+
+        // Ids become visible through the maps only after the arrays have been published
+        this.idsByEncoding.put(ByteBuffer.wrap(encoded), id);
+        this.idsByAddress.put(address, id);
+        return id;
+    }
+}
@@ -0,0 +1,40 @@
+package crypto.transaction;
+
+import java.math.BigDecimal;
+
+/**
+ * Amounts of the coin are whole numbers of base units, the smallest indivisible part of a coin,
+ * held in a {@code long}. Unlike doubles they add up exactly; sums are checked for overflow.
+ */
+public final class Amount {
+
+    /** Number of base units in one coin */
+    public static final long UNITS_PER_COIN = 100_000_000L;
+
+    private Amount() {
+    }
+
+    /**
+     * Convert coins to base units, rounding to the nearest unit
+     * @param coins Number of coins
+     * @return Number of base units
+     * @throws IllegalArgumentException If the amount is not finite or does not fit into a long
+     */
+    public static long fromCoins(double coins) {
+
+        double units = Math.rint(coins * UNITS_PER_COIN);
+        if (Double.isNaN(units) || units >= Long.MAX_VALUE || units <= Long.MIN_VALUE) {
+            throw new IllegalArgumentException(String.format("%f coins cannot be represented", coins));
+        }
+        return (long) units;
+    }
+
+    /**
+     * @param units Number of base units
+     * @return Exact number of coins, e.g. "1.50000000"
+     */
+    public static String format(long units) {
+
+        return BigDecimal.valueOf(units, 8).toPlainString();
+    }
+}
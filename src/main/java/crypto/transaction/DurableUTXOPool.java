@@ -0,0 +1,711 @@
+package crypto.transaction;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Pool of unspent transaction outputs that survives restarts.
+ * The UTXOs are held in memory by a {@link PersistentUTXOPool}. Every change is recorded in a pending
+ * batch, which {@link #commit()} appends to a change log and forces to disk in one write (group
+ * commit, {@link TxHandler} commits once per epoch). Every {@code checkpointInterval} commits the
+ * whole pool is written to a checkpoint file, memory-mapped in windows so that its size is not limited
+ * to the 2 GB of a single mapping, and the log is truncated.
+ * {@link #open(Path)} loads the newest checkpoint and replays only the log batches committed after it;
+ * a batch torn by a crash is detected by its checksum and dropped together with everything behind it.
+ *
+ * Directory layout: {@code utxo.log} and {@code checkpoint-<sequence>.dat}, where the sequence is the
+ * number of batches committed up to the checkpoint.
+ */
+public class DurableUTXOPool implements UTXOStore, Closeable {
+
+    private final static Logger logger = Logger.getLogger(DurableUTXOPool.class);
+
+    private static final String LOG_FILE = "utxo.log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".dat";
+
+    /** Suffix of a checkpoint being written, renamed once it is complete */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** "UTXB", starts each batch in the log */
+    private static final int BATCH_MAGIC = 0x55545842;
+
+    /** "UTXC", starts each checkpoint */
+    private static final int CHECKPOINT_MAGIC = 0x55545843;
+
+    /** Batch header: magic, sequence, payload length; the payload is followed by a CRC32 */
+    private static final int BATCH_HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    /** Checkpoint header: magic, sequence, number of UTXOs, payload length; followed by a CRC32 */
+    private static final int CHECKPOINT_HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    /** Checkpoints are mapped in windows of at most this many bytes */
+    private static final int CHECKPOINT_WINDOW_SIZE = 1 << 26;
+
+    /** Upper bound of the size of one UTXO in a checkpoint, a UTXO never spans two windows */
+    static final int MAX_RECORD_SIZE = 1 << 12;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    /** Directory holding the log and the checkpoints */
+    private final Path directory;
+
+    /** Number of commits after which a checkpoint is written */
+    private final int checkpointInterval;
+
+    /** Size of the windows checkpoints are mapped in */
+    private final int windowSize;
+
+    /** Addresses decoded from the checkpoint and the log, released with the pool */
+    private final AddressRegistry addresses = new AddressRegistry();
+
+    /** Current state of the pool, including uncommitted changes */
+    private PersistentUTXOPool pool;
+
+    /** Log opened for appending */
+    private FileChannel log;
+
+    /** Changes not committed yet */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 12);
+
+    /** Number of batches committed */
+    private long sequence;
+
+    /** Sequence of the newest checkpoint */
+    private long checkpointSequence;
+
+    /** Set by a failed commit, the pool then holds changes that are not in the log and has to be reopened */
+    private boolean failed;
+
+    private DurableUTXOPool(Path directory, int checkpointInterval, int windowSize) {
+
+        this.directory = directory;
+        this.checkpointInterval = checkpointInterval;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Open the pool stored in {@code directory} with the default checkpoint interval
+     * @param directory Directory of the pool, created if it does not exist
+     * @return Recovered pool
+     * @throws IOException If the directory cannot be read or written
+     */
+    public static DurableUTXOPool open(Path directory) throws IOException {
+
+        return open(directory, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Open the pool stored in {@code directory}
+     * @param directory Directory of the pool, created if it does not exist
+     * @param checkpointInterval Number of commits after which a checkpoint is written
+     * @return Recovered pool
+     * @throws IOException If the directory cannot be read or written
+     */
+    public static DurableUTXOPool open(Path directory, int checkpointInterval) throws IOException {
+
+        return open(directory, checkpointInterval, CHECKPOINT_WINDOW_SIZE);
+    }
+
+    /**
+     * Open the pool stored in {@code directory}, mapping checkpoints in windows of the given size
+     * @param windowSize Size of the windows, at least twice {@link #MAX_RECORD_SIZE}
+     */
+    static DurableUTXOPool open(Path directory, int checkpointInterval, int windowSize) throws IOException {
+
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        if (windowSize < 2 * MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException(String.format("Checkpoint window of %d bytes is too small", windowSize));
+        }
+        Files.createDirectories(directory);
+
+        DurableUTXOPool pool = new DurableUTXOPool(directory, checkpointInterval, windowSize);
+        pool.recover();
+        return pool;
+    }
+
+    @Override
+    public void addUTXO(UTXO utxo, TransactionOutput txOut) {
+
+        this.pool.addUTXO(utxo, txOut);
+
+        byte[] hash = utxo.getTxHash();
+
+        this.reserve(1 + Records.getBytesSize(hash) + Integer.BYTES + Records.getOutputSize(txOut));
+        this.pending.put(ADD);
+        writeUTXO(this.pending, hash, utxo.getIndex());
+        Records.writeOutput(this.pending, txOut);
+    }
+
+    @Override
+    public void removeUTXO(UTXO utxo) {
+
+        if (!this.pool.contains(utxo)) {
+            return;
+        }
+        this.pool.removeUTXO(utxo);
+
+        byte[] hash = utxo.getTxHash();
+        this.reserve(1 + Records.getBytesSize(hash) + Integer.BYTES);
+        this.pending.put(REMOVE);
+        writeUTXO(this.pending, hash, utxo.getIndex());
+    }
+
+    @Override
+    public TransactionOutput getTxOutput(UTXO utxo) {
+
+        return this.pool.getTxOutput(utxo);
+    }
+
+    @Override
+    public boolean contains(UTXO utxo) {
+
+        return this.pool.contains(utxo);
+    }
+
+    @Override
+    public ArrayList<UTXO> getAllUTXO() {
+
+        return this.pool.getAllUTXO();
+    }
+
+    @Override
+    public int size() {
+
+        return this.pool.size();
+    }
+
+    /**
+     * Creates an in-memory copy of the current state in constant time. The copy is not durable,
+     * changes to it are not logged.
+     * @return Copy of the pool
+     */
+    @Override
+    public PersistentUTXOPool copy() {
+
+        return this.pool.copy();
+    }
+
+    /**
+     * Append the changes since the last commit to the log as one batch and force it to disk.
+     * Writes a checkpoint if {@code checkpointInterval} batches have been committed since the last one.
+     * If the batch cannot be written, it is dropped and cut off the log, and every further commit
+     * fails: the pool has to be reopened, which restores the last committed state.
+     * @throws IllegalStateException If the batch cannot be written, or a previous commit failed
+     */
+    @Override
+    public void commit() {
+
+        this.checkNotFailed();
+        if (this.pending.position() == 0) {
+            return;
+        }
+
+        long start = -1;
+        try {
+
+            start = this.log.position();
+            this.pending.flip();
+            ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER_SIZE + this.pending.remaining() + Integer.BYTES);
+            batch.putInt(BATCH_MAGIC);
+            batch.putLong(this.sequence + 1);
+            batch.putInt(this.pending.remaining());
+            batch.put(this.pending);
+            batch.putInt(Records.checksum(batch, Integer.BYTES, batch.position()));
+            batch.flip();
+
+            while (batch.hasRemaining()) {
+                this.log.write(batch);
+            }
+            this.log.force(false);
+
+            this.pending.clear();
+            this.sequence++;
+
+        } catch (IOException e) {
+
+            logger.error(e);
+            this.pending.clear();
+            this.failed = true;
+            this.truncateLog(start);
+            throw new IllegalStateException("Committing UTXO changes failed, the pool has to be reopened", e);
+        }
+
+        if (this.sequence - this.checkpointSequence >= this.checkpointInterval) {
+            this.checkpoint();
+        }
+    }
+
+    /**
+     * Write the committed state to a new checkpoint, then truncate the log and delete older checkpoints.
+     * Uncommitted changes are committed first.
+     */
+    public void checkpoint() {
+
+        this.checkNotFailed();
+        if (this.pending.position() > 0) {
+            this.commit();
+            if (this.checkpointSequence == this.sequence) {
+                return;
+            }
+        }
+
+        try {
+
+            ArrayList<UTXO> utxos = this.pool.getAllUTXO();
+
+            long payloadSize = 0;
+            for (UTXO utxo : utxos) {
+
+                int recordSize = getRecordSize(utxo, this.pool.getTxOutput(utxo));
+                if (payloadSize > Long.MAX_VALUE - CHECKPOINT_HEADER_SIZE - Integer.BYTES - recordSize) {
+                    throw new IllegalStateException("UTXO checkpoint exceeds the maximum file size");
+                }
+                payloadSize += recordSize;
+            }
+
+            Path file = this.directory.resolve(CHECKPOINT_PREFIX + this.sequence + CHECKPOINT_SUFFIX);
+            Path temporary = this.directory.resolve(file.getFileName() + TEMPORARY_SUFFIX);
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                CheckpointWriter writer = new CheckpointWriter(channel,
+                        CHECKPOINT_HEADER_SIZE + payloadSize + Integer.BYTES, this.windowSize);
+
+                ByteBuffer buffer = writer.reserve(CHECKPOINT_HEADER_SIZE);
+                buffer.putInt(CHECKPOINT_MAGIC);
+                buffer.putLong(this.sequence);
+                buffer.putInt(utxos.size());
+                buffer.putLong(payloadSize);
+                for (UTXO utxo : utxos) {
+
+                    TransactionOutput output = this.pool.getTxOutput(utxo);
+                    buffer = writer.reserve(getRecordSize(utxo, output));
+                    writeUTXO(buffer, utxo.getTxHash(), utxo.getIndex());
+                    Records.writeOutput(buffer, output);
+                }
+                writer.finish();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // The rename must be durable before the log it replaces is dropped
+            if (!this.syncDirectory()) {
+
+                this.checkpointSequence = this.sequence;
+                return;
+            }
+
+            // Batches up to the checkpoint are skipped on recovery, so a crash from here on loses nothing
+            this.log.truncate(0);
+            this.log.force(true);
+            this.deleteCheckpointsBefore(this.sequence);
+            this.checkpointSequence = this.sequence;
+
+        } catch (IOException e) {
+
+            logger.error(e);
+            throw new IllegalStateException("Writing UTXO checkpoint failed", e);
+        }
+    }
+
+    private void checkNotFailed() {
+
+        if (this.failed) {
+            throw new IllegalStateException("A commit of the UTXO pool failed, reopen it");
+        }
+    }
+
+    /**
+     * Cut a torn batch off the log, on failure recovery drops it by its checksum
+     * @param end Length of the log before the batch, negative if unknown
+     */
+    private void truncateLog(long end) {
+
+        if (end < 0) {
+            return;
+        }
+        try {
+
+            this.log.truncate(end);
+            this.log.position(end);
+
+        } catch (IOException e) {
+            logger.warn("Cannot cut the failed batch off the UTXO log", e);
+        }
+    }
+
+    /**
+     * Force the directory entries, e.g. a renamed checkpoint, to disk
+     * @return False if the platform cannot open directories, the log is kept then, which is safe as
+     *         recovery skips the batches contained in a checkpoint
+     */
+    private boolean syncDirectory() {
+
+        try (FileChannel directory = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+
+            directory.force(true);
+            return true;
+
+        } catch (IOException e) {
+
+            logger.warn(String.format("Cannot sync directory %s, keeping the UTXO log", this.directory), e);
+            return false;
+        }
+    }
+
+    /** @return Number of batches committed since the pool was created */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Close the log, changes that have not been committed are lost
+     * @throws IOException If the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+
+        this.log.close();
+    }
+
+    /**
+     * Load the newest valid checkpoint and replay the log batches committed after it
+     */
+    private void recover() throws IOException {
+
+        this.pool = new PersistentUTXOPool();
+        this.sequence = 0;
+        this.deleteTemporaryCheckpoints();
+
+        List<Long> checkpoints = this.listCheckpoints();
+        for (int i = checkpoints.size() - 1; i >= 0; i--) {
+
+            Path file = this.directory.resolve(CHECKPOINT_PREFIX + checkpoints.get(i) + CHECKPOINT_SUFFIX);
+            if (this.loadCheckpoint(file)) {
+                break;
+            }
+            logger.warn(String.format("Skipping corrupt UTXO checkpoint %s", file));
+        }
+        this.checkpointSequence = this.sequence;
+
+        this.log = FileChannel.open(this.directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long end = this.replayLog();
+        if (end < this.log.size()) {
+
+            logger.warn(String.format("Dropping %d bytes of incomplete UTXO log", this.log.size() - end));
+            this.log.truncate(end);
+            this.log.force(true);
+        }
+        this.log.position(end);
+
+        logger.info(String.format("Recovered %d UTXOs at sequence %d (checkpoint %d)",
+                this.pool.size(), this.sequence, this.checkpointSequence));
+    }
+
+    /**
+     * @return True if the checkpoint was valid and has been loaded
+     */
+    private boolean loadCheckpoint(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size < CHECKPOINT_HEADER_SIZE + Integer.BYTES) {
+                return false;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CHECKPOINT_HEADER_SIZE);
+            if (header.getInt() != CHECKPOINT_MAGIC) {
+                return false;
+            }
+            long sequence = header.getLong();
+            int count = header.getInt();
+            long payloadSize = header.getLong();
+
+            long end = CHECKPOINT_HEADER_SIZE + payloadSize;
+            if (payloadSize < 0 || payloadSize != size - CHECKPOINT_HEADER_SIZE - Integer.BYTES) {
+                return false;
+            }
+
+            // Verify the whole checkpoint before decoding any of it
+            CRC32 checksum = new CRC32();
+            for (long position = Integer.BYTES; position < end; position += this.windowSize) {
+                checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(this.windowSize, end - position)));
+            }
+            if (channel.map(FileChannel.MapMode.READ_ONLY, end, Integer.BYTES).getInt() != (int) checksum.getValue()) {
+                return false;
+            }
+
+            PersistentUTXOPool pool = new PersistentUTXOPool();
+            long windowStart = CHECKPOINT_HEADER_SIZE;
+            ByteBuffer window = null;
+            for (int i = 0; i < count; i++) {
+
+                // Slide the window once the next UTXO might cross its end
+                if (window == null || (window.remaining() < MAX_RECORD_SIZE && windowStart + window.limit() < end)) {
+
+                    windowStart += window == null ? 0 : window.position();
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(this.windowSize, end - windowStart));
+                }
+                pool.addUTXO(readUTXO(window), Records.readOutput(window, this.addresses));
+            }
+
+            this.pool = pool;
+            this.sequence = sequence;
+            return true;
+        }
+    }
+
+    /**
+     * Apply the intact batches following the loaded checkpoint, reading one batch at a time
+     * @return Position behind the last intact batch
+     */
+    private long replayLog() throws IOException {
+
+        long size = this.log.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+
+        while (size - position >= BATCH_HEADER_SIZE) {
+
+            header.clear();
+            this.readLog(header, position);
+            header.flip();
+
+            if (header.getInt() != BATCH_MAGIC) {
+                return position;
+            }
+            long sequence = header.getLong();
+            int payloadSize = header.getInt();
+
+            if (payloadSize < 0 || payloadSize > size - position - BATCH_HEADER_SIZE - Integer.BYTES) {
+                return position;
+            }
+            if (buffer.capacity() < payloadSize + Integer.BYTES) {
+                buffer = ByteBuffer.allocate(payloadSize + Integer.BYTES);
+            }
+            buffer.clear();
+            buffer.limit(payloadSize + Integer.BYTES);
+            this.readLog(buffer, position + BATCH_HEADER_SIZE);
+            buffer.flip();
+
+            CRC32 checksum = new CRC32();
+            checksum.update(header.array(), Integer.BYTES, BATCH_HEADER_SIZE - Integer.BYTES);
+            checksum.update(buffer.array(), 0, payloadSize);
+            if (buffer.getInt(payloadSize) != (int) checksum.getValue()) {
+                return position;
+            }
+
+            // Batches up to the checkpoint are already contained in it
+            if (sequence > this.sequence) {
+
+                if (sequence != this.sequence + 1) {
+                    return position;
+                }
+                buffer.limit(payloadSize);
+                while (buffer.hasRemaining()) {
+
+                    if (buffer.get() == ADD) {
+                        this.pool.addUTXO(readUTXO(buffer), Records.readOutput(buffer, this.addresses));
+                    } else {
+                        this.pool.removeUTXO(readUTXO(buffer));
+                    }
+                }
+                this.sequence = sequence;
+            }
+            position += BATCH_HEADER_SIZE + payloadSize + Integer.BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Fill {@code buffer} from the log starting at {@code position}
+     */
+    private void readLog(ByteBuffer buffer, long position) throws IOException {
+
+        while (buffer.hasRemaining()) {
+
+            if (this.log.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("UTXO log ended unexpectedly");
+            }
+        }
+    }
+
+    private List<Long> listCheckpoints() throws IOException {
+
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory,
+                CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+
+            for (Path file : files) {
+
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(),
+                            name.length() - CHECKPOINT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn(String.format("Ignoring %s", file));
+                }
+            }
+        }
+        sequences.sort(null);
+        return sequences;
+    }
+
+    /**
+     * Delete checkpoints left incomplete by a crash before their rename
+     */
+    private void deleteTemporaryCheckpoints() throws IOException {
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory,
+                CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX + TEMPORARY_SUFFIX)) {
+
+            for (Path file : files) {
+
+                logger.warn(String.format("Deleting incomplete UTXO checkpoint %s", file));
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void deleteCheckpointsBefore(long sequence) throws IOException {
+
+        for (long older : this.listCheckpoints()) {
+            if (older < sequence) {
+                Files.deleteIfExists(this.directory.resolve(CHECKPOINT_PREFIX + older + CHECKPOINT_SUFFIX));
+            }
+        }
+    }
+
+    /**
+     * Make sure the pending batch can take {@code size} more bytes
+     */
+    private void reserve(int size) {
+
+        if (this.pending.remaining() < size) {
+
+            ByteBuffer extended = ByteBuffer.allocate(Math.max(2 * this.pending.capacity(), this.pending.position() + size));
+            this.pending.flip();
+            extended.put(this.pending);
+            this.pending = extended;
+        }
+    }
+
+    /**
+     * @return Number of bytes a UTXO takes in a checkpoint
+     */
+    private static int getRecordSize(UTXO utxo, TransactionOutput output) {
+
+        int size = Records.getBytesSize(utxo.getTxHash()) + Integer.BYTES + Records.getOutputSize(output);
+        if (size > MAX_RECORD_SIZE) {
+            throw new IllegalStateException(String.format("UTXO of %d bytes exceeds the checkpoint record limit", size));
+        }
+        return size;
+    }
+
+    private static void writeUTXO(ByteBuffer buffer, byte[] hash, int index) {
+
+        Records.writeBytes(buffer, hash);
+        buffer.putInt(index);
+    }
+
+    private static UTXO readUTXO(ByteBuffer buffer) {
+
+        return new UTXO(Records.readBytes(buffer), buffer.getInt());
+    }
+
+    /**
+     * Writes a file of known size through memory-mapped windows, each record within one window.
+     * Keeps the CRC32 of everything behind the magic and appends it by {@link #finish()}.
+     */
+    private static final class CheckpointWriter {
+
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+        private final CRC32 checksum = new CRC32();
+
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        /** Position in the window up to which the checksum has been computed */
+        private int checksummed = Integer.BYTES;
+
+        CheckpointWriter(FileChannel channel, long size, int windowSize) {
+
+            this.channel = channel;
+            this.size = size;
+            this.windowSize = windowSize;
+        }
+
+        /**
+         * @return Window with at least {@code length} bytes remaining, to write the next record into
+         */
+        ByteBuffer reserve(int length) throws IOException {
+
+            if (this.window == null || this.window.remaining() < length) {
+
+                long position = this.windowStart;
+                if (this.window != null) {
+
+                    this.updateChecksum();
+                    this.window.force();
+                    position += this.window.position();
+                    this.checksummed = 0;
+                }
+                this.windowStart = position;
+                this.window = this.channel.map(FileChannel.MapMode.READ_WRITE, position,
+                        Math.min(this.windowSize, this.size - position));
+            }
+            return this.window;
+        }
+
+        /**
+         * Append the checksum and force the last window to disk
+         */
+        void finish() throws IOException {
+
+            ByteBuffer buffer = this.reserve(Integer.BYTES);
+            this.updateChecksum();
+            buffer.putInt((int) this.checksum.getValue());
+            this.window.force();
+
+            if (this.windowStart + this.window.position() != this.size) {
+                throw new IllegalStateException("UTXO checkpoint does not match its computed size");
+            }
+        }
+
+        private void updateChecksum() {
+
+            ByteBuffer written = this.window.duplicate();
+            written.limit(this.window.position());
+            written.position(this.checksummed);
+            this.checksum.update(written);
+            this.checksummed = this.window.position();
+        }
+    }
+}
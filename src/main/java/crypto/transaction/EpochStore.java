@@ -0,0 +1,450 @@
+package crypto.transaction;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Append-only store of the transactions accepted per epoch, e.g.
+ * {@code store.append(txHandler.handleTxs(possibleTxs))}.
+ * Transactions are written as length prefixed, checksummed records to segment files of bounded size
+ * and read back through read-only memory mappings. An in-memory index maps each transaction hash to
+ * the position of its record, so lookups and replays hand out views of the mapped files and copy
+ * nothing until a record is decoded with {@link #decode(ByteBuffer)}.
+ *
+ * Record layout: body length | CRC32 of the body | body, where the body is the epoch followed by the
+ * transaction (hash, inputs and outputs, see {@link #decode(ByteBuffer)}).
+ */
+public class EpochStore implements Closeable {
+
+    private final static Logger logger = Logger.getLogger(EpochStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    /** Default size of a segment file, a memory mapping cannot exceed 2 GB */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    /**
+     * Receives the records of a replay
+     */
+    public interface RecordVisitor {
+
+        /**
+         * @param epoch Epoch the transaction was accepted in
+         * @param record Read-only view of the record, see {@link #decode(ByteBuffer)}
+         */
+        void visit(long epoch, ByteBuffer record);
+    }
+
+    /** Directory holding the segments */
+    private final Path directory;
+
+    /** Size after which a new segment is started */
+    private final int segmentSize;
+
+    /** Mappings of the segments, the last one is remapped when it has grown */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /** Transaction hash -> segment (upper 32 bits) and offset of the record (lower 32 bits) */
+    private final HashMap<ByteBuffer, Long> index = new HashMap<>();
+
+    /** Addresses decoded so far, shared by all readers and released with the store */
+    private final AddressRegistry addresses = new AddressRegistry();
+
+    /** Segment records are appended to */
+    private FileChannel activeSegment;
+
+    /** Number of epochs appended */
+    private long numEpochs;
+
+    private EpochStore(Path directory, int segmentSize) {
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open the store in {@code directory} with the default segment size
+     * @param directory Directory of the store, created if it does not exist
+     * @return Store with its index rebuilt
+     * @throws IOException If the directory cannot be read or written
+     */
+    public static EpochStore open(Path directory) throws IOException {
+
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open the store in {@code directory}
+     * @param directory Directory of the store, created if it does not exist
+     * @param segmentSize Size after which a new segment file is started
+     * @return Store with its index rebuilt
+     * @throws IOException If the directory cannot be read or written
+     */
+    public static EpochStore open(Path directory, int segmentSize) throws IOException {
+
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        Files.createDirectories(directory);
+
+        EpochStore store = new EpochStore(directory, segmentSize);
+        store.load();
+        return store;
+    }
+
+    /**
+     * Append the transactions accepted in the next epoch and force them to disk
+     * @param txs Accepted transactions
+     * @return Number of the epoch
+     */
+    public synchronized long append(Transaction[] txs) {
+
+        long epoch = this.numEpochs;
+
+        int size = 0;
+        for (Transaction tx : txs) {
+            size += RECORD_HEADER_SIZE + getBodySize(tx);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Transaction tx : txs) {
+
+            int start = buffer.position();
+            buffer.position(start + RECORD_HEADER_SIZE);
+            buffer.putLong(epoch);
+            writeTransaction(buffer, tx);
+
+            buffer.putInt(start, buffer.position() - start - RECORD_HEADER_SIZE);
+            buffer.putInt(start + Integer.BYTES, Records.checksum(buffer, start + RECORD_HEADER_SIZE, buffer.position()));
+        }
+        buffer.flip();
+
+        try {
+
+            // An epoch is never split, so a segment only exceeds its size if a single epoch does
+            long offset = this.activeSegment.size();
+            if (offset > 0 && offset + size > this.segmentSize) {
+
+                this.startSegment(this.segments.size());
+                offset = 0;
+            }
+
+            while (buffer.hasRemaining()) {
+                this.activeSegment.write(buffer);
+            }
+            this.activeSegment.force(false);
+
+            long segment = this.segments.size() - 1;
+            int position = 0;
+            for (Transaction tx : txs) {
+
+                this.index.put(ByteBuffer.wrap(tx.getHash()), (segment << 32) | (offset + position));
+                position += RECORD_HEADER_SIZE + buffer.getInt(position);
+            }
+
+        } catch (IOException e) {
+
+            logger.error(e);
+            throw new IllegalStateException("Appending epoch failed", e);
+        }
+
+        this.numEpochs++;
+        return epoch;
+    }
+
+    /**
+     * Look up a transaction without decoding it
+     * @param hash Hash of the transaction
+     * @return Read-only view of the record, see {@link #decode(ByteBuffer)}, or null if the transaction is unknown
+     */
+    public synchronized ByteBuffer getRecord(byte[] hash) {
+
+        Long position = this.index.get(ByteBuffer.wrap(hash));
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer segment = this.getSegment((int) (position >>> 32));
+        int offset = (int) (long) position;
+
+        return slice(segment, offset + RECORD_HEADER_SIZE + Long.BYTES, offset + RECORD_HEADER_SIZE + segment.getInt(offset));
+    }
+
+    /**
+     * @param hash Hash of the transaction
+     * @return The transaction, or null if it is unknown
+     */
+    public Transaction getTransaction(byte[] hash) {
+
+        ByteBuffer record = this.getRecord(hash);
+        return record == null ? null : this.decode(record);
+    }
+
+    /**
+     * @param hash Hash of the transaction
+     * @return True if the transaction has been stored
+     */
+    public synchronized boolean contains(byte[] hash) {
+
+        return this.index.containsKey(ByteBuffer.wrap(hash));
+    }
+
+    /**
+     * Visit all records in the order they were appended
+     * @param visitor Receives epoch and record of each transaction
+     */
+    public void replay(RecordVisitor visitor) {
+
+        int numSegments;
+        synchronized (this) {
+            numSegments = this.segments.size();
+        }
+
+        for (int s = 0; s < numSegments; s++) {
+
+            ByteBuffer segment;
+            synchronized (this) {
+                segment = this.getSegment(s);
+            }
+
+            int offset = 0;
+            while (offset < segment.limit()) {
+
+                int end = offset + RECORD_HEADER_SIZE + segment.getInt(offset);
+                long epoch = segment.getLong(offset + RECORD_HEADER_SIZE);
+                visitor.visit(epoch, slice(segment, offset + RECORD_HEADER_SIZE + Long.BYTES, end));
+                offset = end;
+            }
+        }
+    }
+
+    /**
+     * Decode a record: transaction hash, number of inputs, per input the hash and output index of the
+     * claimed output and the signature, number of outputs, per output value and address
+     * @param record Record as returned by {@link #getRecord(byte[])} or passed to a {@link RecordVisitor}
+     * @return Transaction
+     */
+    public Transaction decode(ByteBuffer record) {
+
+        ByteBuffer buffer = record.duplicate();
+        Records.readBytes(buffer);
+
+        Transaction tx = new Transaction();
+        int numInputs = buffer.getInt();
+        for (int i = 0; i < numInputs; i++) {
+
+            tx.addInput(Records.readBytes(buffer), buffer.getInt());
+            tx.addSignature(Records.readBytes(buffer), i);
+        }
+        int numOutputs = buffer.getInt();
+        for (int i = 0; i < numOutputs; i++) {
+
+            tx.addOutput(Records.readOutput(buffer, this.addresses));
+        }
+        return tx;
+    }
+
+    /** @return Number of stored transactions */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /** @return Number of epochs appended, after reopening the store trailing epochs without transactions are not counted */
+    public synchronized long getNumEpochs() {
+        return this.numEpochs;
+    }
+
+    /**
+     * Close the active segment, the store must not be used afterwards
+     * @throws IOException If the segment cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        this.activeSegment.close();
+    }
+
+    /**
+     * Map the segments and rebuild the index. A record torn by a crash ends the last segment.
+     */
+    private void load() throws IOException {
+
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+
+            for (Path file : files) {
+
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        numbers.sort(null);
+
+        for (int s = 0; s < numbers.size(); s++) {
+
+            if (numbers.get(s) != s) {
+                throw new IOException(String.format("Segment %d of epoch store %s is missing", s, this.directory));
+            }
+
+            Path file = this.segmentFile(s);
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            int end = this.indexSegment(s, segment);
+            if (end < segment.capacity()) {
+
+                if (s < numbers.size() - 1) {
+                    throw new IOException(String.format("Segment %s is corrupt at offset %d", file, end));
+                }
+                logger.warn(String.format("Dropping %d bytes of incomplete records from %s", segment.capacity() - end, file));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+                segment = null;
+            }
+            this.segments.add(segment);
+        }
+
+        if (this.segments.isEmpty()) {
+
+            this.startSegment(0);
+
+        } else {
+
+            int last = this.segments.size() - 1;
+            this.activeSegment = FileChannel.open(this.segmentFile(last), StandardOpenOption.WRITE);
+            this.activeSegment.position(this.activeSegment.size());
+            this.segments.set(last, null);
+        }
+
+        logger.info(String.format("Opened epoch store with %d transactions in %d epochs", this.index.size(), this.numEpochs));
+    }
+
+    /**
+     * Add the intact records of a segment to the index
+     * @return Offset behind the last intact record
+     */
+    private int indexSegment(int s, ByteBuffer segment) {
+
+        int offset = 0;
+        while (segment.capacity() - offset >= RECORD_HEADER_SIZE) {
+
+            int length = segment.getInt(offset);
+            int start = offset + RECORD_HEADER_SIZE;
+            if (length < Long.BYTES || length > segment.capacity() - start ||
+                    segment.getInt(offset + Integer.BYTES) != Records.checksum(segment, start, start + length)) {
+                break;
+            }
+
+            ByteBuffer record = slice(segment, start + Long.BYTES, start + length);
+            this.index.put(ByteBuffer.wrap(Records.readBytes(record)), ((long) s << 32) | offset);
+            this.numEpochs = Math.max(this.numEpochs, segment.getLong(start) + 1);
+
+            offset = start + length;
+        }
+        return offset;
+    }
+
+    private void startSegment(int s) throws IOException {
+
+        if (this.activeSegment != null) {
+            this.activeSegment.close();
+        }
+        this.activeSegment = FileChannel.open(this.segmentFile(s), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.segments.add(null);
+    }
+
+    /**
+     * Mapping of segment {@code s} covering all records appended so far
+     */
+    private ByteBuffer getSegment(int s) {
+
+        MappedByteBuffer segment = this.segments.get(s);
+        if (segment == null || (s == this.segments.size() - 1 && segment.capacity() < this.activeSize())) {
+
+            try (FileChannel channel = FileChannel.open(this.segmentFile(s), StandardOpenOption.READ)) {
+
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                this.segments.set(s, segment);
+
+            } catch (IOException e) {
+
+                logger.error(e);
+                throw new IllegalStateException(String.format("Segment %d cannot be mapped", s), e);
+            }
+        }
+        return segment;
+    }
+
+    private long activeSize() {
+
+        try {
+            return this.activeSegment.size();
+        } catch (IOException e) {
+            throw new IllegalStateException("Size of the active segment unknown", e);
+        }
+    }
+
+    private Path segmentFile(int s) {
+
+        return this.directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, s, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Read-only view of the bytes {@code from} (inclusive) to {@code to} (exclusive)
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    private static int getBodySize(Transaction tx) {
+
+        int size = Long.BYTES + Records.getBytesSize(tx.getHash()) + Integer.BYTES + Integer.BYTES;
+        for (TransactionInput input : tx.getInputs()) {
+            size += Records.getBytesSize(input.prevTxHash) + Integer.BYTES + Records.getBytesSize(input.signature);
+        }
+        for (TransactionOutput output : tx.getOutputs()) {
+            size += Records.getOutputSize(output);
+        }
+        return size;
+    }
+
+    private static void writeTransaction(ByteBuffer buffer, Transaction tx) {
+
+        Records.writeBytes(buffer, tx.getHash());
+
+        buffer.putInt(tx.numberOfInputs());
+        for (TransactionInput input : tx.getInputs()) {
+
+            Records.writeBytes(buffer, input.prevTxHash);
+            buffer.putInt(input.outputIndex);
+            Records.writeBytes(buffer, input.signature);
+        }
+
+        buffer.putInt(tx.numberOfOutputs());
+        for (TransactionOutput output : tx.getOutputs()) {
+            Records.writeOutput(buffer, output);
+        }
+    }
+}
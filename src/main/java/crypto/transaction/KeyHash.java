@@ -0,0 +1,91 @@
+package crypto.transaction;
+
+import java.security.SecureRandom;
+
+/**
+ * Hash of the lookup keys of this package, i.e. a transaction hash and an index.
+ * The keys are chosen by whoever proposes transactions, an input may claim any bytes, hence all bytes
+ * are mixed by SipHash-1-3 under a key drawn once per process, so that colliding keys cannot be
+ * computed in advance.
+ */
+final class KeyHash {
+
+    private static final long K0;
+    private static final long K1;
+
+    static {
+        SecureRandom random = new SecureRandom();
+        K0 = random.nextLong();
+        K1 = random.nextLong();
+    }
+
+    private KeyHash() {
+    }
+
+    /**
+     * @param bytes Transaction hash, read as big-endian words
+     * @param index Output or input index
+     * @return 64 bit keyed hash of both
+     */
+    static long hash(byte[] bytes, int index) {
+
+        long v0 = K0 ^ 0x736f6d6570736575L;
+        long v1 = K1 ^ 0x646f72616e646f6dL;
+        long v2 = K0 ^ 0x6c7967656e657261L;
+        long v3 = K1 ^ 0x7465646279746573L;
+
+        // Full words, then the remaining bytes together with the length, then the index
+        int numWords = bytes.length / Long.BYTES;
+        for (int w = 0; w <= numWords + 1; w++) {
+
+            long m = w < numWords ? readLong(bytes, w * Long.BYTES) : w == numWords ? tail(bytes) : index;
+
+            v3 ^= m;
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+        }
+
+        v2 ^= 0xFF;
+        for (int round = 0; round < 3; round++) {
+
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * @return {@link #hash(byte[], int)} folded to an int, for {@code hashCode()}
+     */
+    static int hashCode(byte[] bytes, int index) {
+
+        long h = hash(bytes, index);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Bytes behind the last full word, with the length in the top byte */
+    private static long tail(byte[] bytes) {
+
+        long m = (long) bytes.length << 56;
+        int from = bytes.length - bytes.length % Long.BYTES;
+        for (int i = from; i < bytes.length; i++) {
+            m |= (long) (bytes[i] & 0xFF) << (8 * (i - from));
+        }
+        return m;
+    }
+
+    /** Big-endian long at {@code offset} */
+    static long readLong(byte[] bytes, int offset) {
+
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,399 @@
+package crypto.transaction;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.ArrayList;
+
+/**
+ * Pool of unspent transaction outputs stored outside of the Java heap.
+ * The UTXOs are kept in an open-addressing hash table with linear probing, laid out flat in direct
+ * {@code ByteBuffer} pages. Each slot holds the 36 byte outpoint (32 byte transaction hash and
+ * 4 byte output index) followed by the output inline, i.e. its value and the id of its address in
+ * the pool's {@link AddressRegistry}. Lookups hash and compare the key bytes in place and do not
+ * allocate; removals shift the following entries back instead of leaving tombstones.
+ * Copies share the registry, which only grows, so the addresses ever paid stay on the heap as long
+ * as any copy is alive.
+ */
+public class OffHeapUTXOPool implements UTXOStore {
+
+    /** Length of the transaction hashes the pool accepts (SHA-256) */
+    public static final int HASH_LENGTH = 32;
+
+    /*
+     * Slot layout: used flag | transaction hash | output index | value | address id
+     */
+    private static final int USED_OFFSET = 0;
+    private static final int HASH_OFFSET = 1;
+    private static final int INDEX_OFFSET = HASH_OFFSET + HASH_LENGTH;
+    private static final int VALUE_OFFSET = INDEX_OFFSET + Integer.BYTES;
+    private static final int ADDRESS_OFFSET = VALUE_OFFSET + Long.BYTES;
+    private static final int SLOT_SIZE = ADDRESS_OFFSET + Integer.BYTES;
+
+    /** Slots per page, pages keep each buffer well below the 2 GB limit of a ByteBuffer */
+    private static final int PAGE_BITS = 16;
+    private static final int SLOTS_PER_PAGE = 1 << PAGE_BITS;
+
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /** Pages of the hash table */
+    private ByteBuffer[] pages;
+
+    /** Number of slots, always a power of two */
+    private long capacity;
+
+    /** Number of UTXOs in the pool */
+    private int size;
+
+    /** Transaction hash of a stored outpoint while it is rehashed */
+    private final byte[] scratch = new byte[HASH_LENGTH];
+
+    /** Addresses referred to by the slots, shared with copies */
+    private final AddressRegistry addresses;
+
+    /**
+     * Creates a new empty pool
+     */
+    public OffHeapUTXOPool() {
+
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty pool
+     * @param expectedSize Number of UTXOs the pool is expected to hold
+     */
+    public OffHeapUTXOPool(int expectedSize) {
+
+        this.addresses = new AddressRegistry();
+        this.allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Creates a new pool that is a copy of {@code other}
+     * @param other The pool to be copied
+     */
+    public OffHeapUTXOPool(OffHeapUTXOPool other) {
+
+        this.addresses = other.addresses;
+        this.allocate(other.capacity);
+        for (int page = 0; page < this.pages.length; page++) {
+
+            ByteBuffer source = other.pages[page].duplicate();
+            source.clear();
+            this.pages[page].put(source);
+            this.pages[page].clear();
+        }
+        this.size = other.size;
+    }
+
+    @Override
+    public void addUTXO(UTXO utxo, TransactionOutput txOut) {
+
+        byte[] txHash = checkHash(utxo.getTxHash());
+
+        long slot = this.find(txHash, utxo.getIndex());
+        if (slot < 0) {
+
+            if (this.size + 1 > MAX_LOAD_FACTOR * this.capacity) {
+
+                this.resize(2 * this.capacity);
+                slot = this.find(txHash, utxo.getIndex());
+            }
+            slot = -slot - 1;
+
+            ByteBuffer page = this.page(slot);
+            int offset = offset(slot);
+            page.put(offset + USED_OFFSET, (byte) 1);
+            for (int i = 0; i < HASH_LENGTH; i++) {
+                page.put(offset + HASH_OFFSET + i, txHash[i]);
+            }
+            page.putInt(offset + INDEX_OFFSET, utxo.getIndex());
+            this.size++;
+        }
+
+        ByteBuffer page = this.page(slot);
+        int offset = offset(slot);
+        page.putLong(offset + VALUE_OFFSET, txOut.value);
+        page.putInt(offset + ADDRESS_OFFSET, this.addresses.intern(txOut.address));
+    }
+
+    @Override
+    public void removeUTXO(UTXO utxo) {
+
+        long slot = this.find(utxo.getTxHash(), utxo.getIndex());
+        if (slot < 0) {
+            return;
+        }
+
+        // Backward shift deletion: move later entries of the probe sequence into the gap
+        long mask = this.capacity - 1;
+        long gap = slot;
+        long next = (gap + 1) & mask;
+
+        while (this.isUsed(next)) {
+
+            long home = this.home(next);
+
+            // Move the entry if its home slot is not in the cyclic range (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+
+                this.copySlot(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.page(gap).put(offset(gap) + USED_OFFSET, (byte) 0);
+        this.size--;
+    }
+
+    /**
+     * Creates a new output object from the inline value and address, use
+     * {@link #getTxOutput(UTXO, TransactionOutput)} to read them without allocating
+     */
+    @Override
+    public TransactionOutput getTxOutput(UTXO utxo) {
+
+        long slot = this.find(utxo.getTxHash(), utxo.getIndex());
+        if (slot < 0) {
+            return null;
+        }
+        return this.addresses.newOutput(this.addressIdAt(slot), this.valueAt(slot));
+    }
+
+    /**
+     * Fills {@code target} with the inline value and the interned address, nothing is allocated
+     */
+    @Override
+    public TransactionOutput getTxOutput(UTXO utxo, TransactionOutput target) {
+
+        long slot = this.find(utxo.getTxHash(), utxo.getIndex());
+        if (slot < 0) {
+            return null;
+        }
+        int id = this.addressIdAt(slot);
+        target.set(this.valueAt(slot), this.addresses.getAddress(id), this.addresses.getEncoded(id));
+        return target;
+    }
+
+    @Override
+    public boolean contains(UTXO utxo) {
+
+        return this.find(utxo.getTxHash(), utxo.getIndex()) >= 0;
+    }
+
+    /**
+     * @return the value of the output corresponding to UTXO {@code utxo}, or -1 if it is not in the pool
+     */
+    public long getValue(UTXO utxo) {
+
+        long slot = this.find(utxo.getTxHash(), utxo.getIndex());
+        return slot < 0 ? -1 : this.valueAt(slot);
+    }
+
+    /**
+     * @return the address of the output corresponding to UTXO {@code utxo}, or null if it is not in the pool
+     */
+    public PublicKey getAddress(UTXO utxo) {
+
+        long slot = this.find(utxo.getTxHash(), utxo.getIndex());
+        return slot < 0 ? null : this.addresses.getAddress(this.addressIdAt(slot));
+    }
+
+    @Override
+    public ArrayList<UTXO> getAllUTXO() {
+
+        ArrayList<UTXO> utxos = new ArrayList<>(this.size);
+        byte[] txHash = new byte[HASH_LENGTH];
+
+        for (long slot = 0; slot < this.capacity; slot++) {
+
+            if (this.isUsed(slot)) {
+
+                ByteBuffer page = this.page(slot);
+                int offset = offset(slot);
+                for (int i = 0; i < HASH_LENGTH; i++) {
+                    txHash[i] = page.get(offset + HASH_OFFSET + i);
+                }
+                utxos.add(new UTXO(txHash, page.getInt(offset + INDEX_OFFSET)));
+            }
+        }
+        return utxos;
+    }
+
+    @Override
+    public int size() {
+
+        return this.size;
+    }
+
+    @Override
+    public OffHeapUTXOPool copy() {
+
+        return new OffHeapUTXOPool(this);
+    }
+
+    /**
+     * Look up the slot of an outpoint
+     * @return the slot holding the outpoint, or {@code -(insertion slot) - 1} if it is not in the pool
+     */
+    private long find(byte[] txHash, int index) {
+
+        if (txHash.length != HASH_LENGTH) {
+            return -1;
+        }
+
+        long mask = this.capacity - 1;
+        long slot = hash(txHash, index) & mask;
+
+        while (this.isUsed(slot)) {
+
+            if (this.matches(slot, txHash, index)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private boolean matches(long slot, byte[] txHash, int index) {
+
+        ByteBuffer page = this.page(slot);
+        int offset = offset(slot);
+
+        if (page.getInt(offset + INDEX_OFFSET) != index) {
+            return false;
+        }
+        for (int i = 0; i < HASH_LENGTH; i += Long.BYTES) {
+
+            if (page.getLong(offset + HASH_OFFSET + i) != KeyHash.readLong(txHash, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(byte[] txHash, int index) {
+
+        return KeyHash.hash(txHash, index);
+    }
+
+    /**
+     * Hash of the outpoint stored at {@code offset} of {@code page}, equal to {@link #hash(byte[], int)}.
+     * Only used when changing the pool, which is not thread safe anyway, so the hash is read into a shared array.
+     */
+    private long hash(ByteBuffer page, int offset) {
+
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            this.scratch[i] = page.get(offset + HASH_OFFSET + i);
+        }
+        return hash(this.scratch, page.getInt(offset + INDEX_OFFSET));
+    }
+
+    /** @return The slot the entry stored in {@code slot} hashes to */
+    private long home(long slot) {
+
+        return hash(this.page(slot), offset(slot)) & (this.capacity - 1);
+    }
+
+    private boolean isUsed(long slot) {
+
+        return this.page(slot).get(offset(slot) + USED_OFFSET) != 0;
+    }
+
+    private long valueAt(long slot) {
+
+        return this.page(slot).getLong(offset(slot) + VALUE_OFFSET);
+    }
+
+    private int addressIdAt(long slot) {
+
+        return this.page(slot).getInt(offset(slot) + ADDRESS_OFFSET);
+    }
+
+    private void copySlot(long from, long to) {
+
+        ByteBuffer source = this.page(from);
+        ByteBuffer target = this.page(to);
+        int sourceOffset = offset(from);
+        int targetOffset = offset(to);
+
+        for (int i = 0; i < SLOT_SIZE; i++) {
+            target.put(targetOffset + i, source.get(sourceOffset + i));
+        }
+    }
+
+    private ByteBuffer page(long slot) {
+
+        return this.pages[(int) (slot >>> PAGE_BITS)];
+    }
+
+    private static int offset(long slot) {
+
+        return (int) (slot & (SLOTS_PER_PAGE - 1)) * SLOT_SIZE;
+    }
+
+    private void allocate(long capacity) {
+
+        this.capacity = capacity;
+
+        int numPages = (int) ((capacity + SLOTS_PER_PAGE - 1) / SLOTS_PER_PAGE);
+        int slotsPerPage = (int) Math.min(capacity, SLOTS_PER_PAGE);
+
+        this.pages = new ByteBuffer[numPages];
+        for (int page = 0; page < numPages; page++) {
+            this.pages[page] = ByteBuffer.allocateDirect(slotsPerPage * SLOT_SIZE);
+        }
+    }
+
+    /**
+     * Rehash all entries into a table with the given number of slots
+     */
+    private void resize(long capacity) {
+
+        ByteBuffer[] oldPages = this.pages;
+        long oldCapacity = this.capacity;
+
+        this.allocate(capacity);
+        long mask = capacity - 1;
+
+        for (long slot = 0; slot < oldCapacity; slot++) {
+
+            ByteBuffer source = oldPages[(int) (slot >>> PAGE_BITS)];
+            int sourceOffset = offset(slot);
+
+            if (source.get(sourceOffset + USED_OFFSET) == 0) {
+                continue;
+            }
+
+            long target = hash(source, sourceOffset) & mask;
+            while (this.isUsed(target)) {
+                target = (target + 1) & mask;
+            }
+
+            ByteBuffer page = this.page(target);
+            int targetOffset = offset(target);
+            for (int i = 0; i < SLOT_SIZE; i++) {
+                page.put(targetOffset + i, source.get(sourceOffset + i));
+            }
+        }
+    }
+
+    private static long capacityFor(int expectedSize) {
+
+        long capacity = DEFAULT_CAPACITY;
+        while (expectedSize > MAX_LOAD_FACTOR * capacity) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static byte[] checkHash(byte[] txHash) {
+
+        if (txHash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException(String.format(
+                    "Transaction hash must have %d bytes, got %d", HASH_LENGTH, txHash.length));
+        }
+        return txHash;
+    }
+}
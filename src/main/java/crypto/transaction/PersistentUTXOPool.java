@@ -0,0 +1,394 @@
+package crypto.transaction;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of unspent transaction outputs backed by a persistent hash array mapped trie (HAMT).
+ * The trie is never modified in place: adding or removing a UTXO copies the O(log n) nodes on the
+ * path to it and shares all other nodes with the previous version. Hence copies and snapshots of
+ * the pool take constant time and memory, no matter how many UTXOs it holds.
+ */
+public class PersistentUTXOPool implements UTXOStore {
+
+    /** Number of hash bits consumed per level of the trie */
+    private static final int BITS_PER_LEVEL = 5;
+
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    /** Root of the trie, null if the pool is empty */
+    private Node root;
+
+    /** Number of UTXOs in the pool */
+    private int size;
+
+    /**
+     * Creates a new empty pool
+     */
+    public PersistentUTXOPool() {
+
+        this(null, 0);
+    }
+
+    /**
+     * Creates a new pool holding the same UTXOs as {@code other}
+     * @param other The pool to be copied
+     */
+    public PersistentUTXOPool(UTXOStore other) {
+
+        if (other instanceof PersistentUTXOPool) {
+
+            this.root = ((PersistentUTXOPool) other).root;
+            this.size = ((PersistentUTXOPool) other).size;
+
+        } else {
+
+            for (UTXO utxo : other.getAllUTXO()) {
+                this.addUTXO(utxo, other.getTxOutput(utxo));
+            }
+        }
+    }
+
+    private PersistentUTXOPool(Node root, int size) {
+
+        this.root = root;
+        this.size = size;
+    }
+
+    @Override
+    public void addUTXO(UTXO utxo, TransactionOutput txOut) {
+
+        boolean[] added = new boolean[1];
+        Node node = this.root == null ? BitmapNode.EMPTY : this.root;
+
+        this.root = node.put(0, hash(utxo), utxo, txOut, added);
+        if (added[0]) {
+            this.size++;
+        }
+    }
+
+    @Override
+    public void removeUTXO(UTXO utxo) {
+
+        if (this.root == null) {
+            return;
+        }
+        Node node = this.root.remove(0, hash(utxo), utxo);
+        if (node != this.root) {
+
+            this.root = node;
+            this.size--;
+        }
+    }
+
+    @Override
+    public TransactionOutput getTxOutput(UTXO utxo) {
+
+        return this.root == null ? null : this.root.get(0, hash(utxo), utxo);
+    }
+
+    @Override
+    public boolean contains(UTXO utxo) {
+
+        return this.getTxOutput(utxo) != null;
+    }
+
+    @Override
+    public ArrayList<UTXO> getAllUTXO() {
+
+        ArrayList<UTXO> utxos = new ArrayList<>(this.size);
+        if (this.root != null) {
+            this.root.collect(utxos);
+        }
+        return utxos;
+    }
+
+    @Override
+    public int size() {
+
+        return this.size;
+    }
+
+    /**
+     * Creates a copy in constant time, both pools share the trie until either of them is modified
+     * @return Copy of the pool
+     */
+    @Override
+    public PersistentUTXOPool copy() {
+
+        return new PersistentUTXOPool(this.root, this.size);
+    }
+
+    /**
+     * Same as {@link #copy()}, named for callers keeping versions of the pool
+     * @return Immutable version of the pool at this point in time, as a pool of its own
+     */
+    public PersistentUTXOPool snapshot() {
+
+        return this.copy();
+    }
+
+    /**
+     * Spread the hash code of the UTXO, so that the upper bits take part in the lower levels
+     */
+    private static int hash(UTXO utxo) {
+
+        int h = utxo.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitPosition(int hash, int shift) {
+
+        return 1 << ((hash >>> shift) & LEVEL_MASK);
+    }
+
+    /**
+     * Node of the trie. Nodes are immutable, modifications return a new node
+     * (or the same node if nothing changed).
+     */
+    private interface Node {
+
+        TransactionOutput get(int shift, int hash, UTXO key);
+
+        Node put(int shift, int hash, UTXO key, TransactionOutput value, boolean[] added);
+
+        /** @return the node without {@code key}, null if it became empty */
+        Node remove(int shift, int hash, UTXO key);
+
+        void collect(ArrayList<UTXO> utxos);
+    }
+
+    /**
+     * Node with up to 32 children, present children are flagged in a bitmap.
+     * The array holds two slots per child: either a key and its value, or null and a sub node.
+     */
+    private static final class BitmapNode implements Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        @Override
+        public TransactionOutput get(int shift, int hash, UTXO key) {
+
+            int bit = bitPosition(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * this.index(bit);
+            Object k = this.array[i];
+            Object v = this.array[i + 1];
+
+            if (k == null) {
+                return ((Node) v).get(shift + BITS_PER_LEVEL, hash, key);
+            }
+            return key.equals(k) ? (TransactionOutput) v : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, UTXO key, TransactionOutput value, boolean[] added) {
+
+            int bit = bitPosition(hash, shift);
+            int i = 2 * this.index(bit);
+
+            if ((this.bitmap & bit) == 0) {
+
+                Object[] array = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, array, 0, i);
+                array[i] = key;
+                array[i + 1] = value;
+                System.arraycopy(this.array, i, array, i + 2, this.array.length - i);
+
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, array);
+            }
+
+            Object k = this.array[i];
+            Object v = this.array[i + 1];
+
+            if (k == null) {
+
+                Node node = ((Node) v).put(shift + BITS_PER_LEVEL, hash, key, value, added);
+                return node == v ? this : this.with(i, null, node);
+            }
+
+            if (key.equals(k)) {
+                return v == value ? this : this.with(i, k, value);
+            }
+
+            added[0] = true;
+            Node node = createNode(shift + BITS_PER_LEVEL, (UTXO) k, (TransactionOutput) v, hash, key, value);
+            return this.with(i, null, node);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, UTXO key) {
+
+            int bit = bitPosition(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * this.index(bit);
+            Object k = this.array[i];
+            Object v = this.array[i + 1];
+
+            if (k == null) {
+
+                Node node = ((Node) v).remove(shift + BITS_PER_LEVEL, hash, key);
+                if (node == v) {
+                    return this;
+                }
+                if (node != null) {
+                    return this.with(i, null, node);
+                }
+            } else if (!key.equals(k)) {
+
+                return this;
+            }
+
+            if (this.bitmap == bit) {
+                return null;
+            }
+            Object[] array = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, array, 0, i);
+            System.arraycopy(this.array, i + 2, array, i, array.length - i);
+
+            return new BitmapNode(this.bitmap ^ bit, array);
+        }
+
+        @Override
+        public void collect(ArrayList<UTXO> utxos) {
+
+            for (int i = 0; i < this.array.length; i += 2) {
+
+                if (this.array[i] == null) {
+                    ((Node) this.array[i + 1]).collect(utxos);
+                } else {
+                    utxos.add((UTXO) this.array[i]);
+                }
+            }
+        }
+
+        private BitmapNode with(int i, Object key, Object value) {
+
+            Object[] array = this.array.clone();
+            array[i] = key;
+            array[i + 1] = value;
+            return new BitmapNode(this.bitmap, array);
+        }
+
+        /**
+         * Create the node holding two keys that share the same hash bits up to {@code shift}
+         */
+        private static Node createNode(int shift,
+                                       UTXO key1, TransactionOutput value1,
+                                       int hash2, UTXO key2, TransactionOutput value2) {
+
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, added)
+                        .put(shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * Node holding keys whose (spread) hash codes are identical
+     */
+    private static final class CollisionNode implements Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(UTXO key) {
+
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (key.equals(this.array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public TransactionOutput get(int shift, int hash, UTXO key) {
+
+            int i = this.find(key);
+            return i < 0 ? null : (TransactionOutput) this.array[i + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, UTXO key, TransactionOutput value, boolean[] added) {
+
+            if (hash != this.hash) {
+
+                // Keys differ further down, push this node one level deeper
+                return new BitmapNode(bitPosition(this.hash, shift), new Object[] {null, this})
+                        .put(shift, hash, key, value, added);
+            }
+
+            int i = this.find(key);
+            if (i >= 0) {
+
+                if (this.array[i + 1] == value) {
+                    return this;
+                }
+                Object[] array = this.array.clone();
+                array[i + 1] = value;
+                return new CollisionNode(this.hash, array);
+            }
+
+            Object[] array = new Object[this.array.length + 2];
+            System.arraycopy(this.array, 0, array, 0, this.array.length);
+            array[this.array.length] = key;
+            array[this.array.length + 1] = value;
+
+            added[0] = true;
+            return new CollisionNode(this.hash, array);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, UTXO key) {
+
+            int i = this.find(key);
+            if (i < 0) {
+                return this;
+            }
+            if (this.array.length == 2) {
+                return null;
+            }
+            Object[] array = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, array, 0, i);
+            System.arraycopy(this.array, i + 2, array, i, array.length - i);
+
+            return new CollisionNode(this.hash, array);
+        }
+
+        @Override
+        public void collect(ArrayList<UTXO> utxos) {
+
+            for (int i = 0; i < this.array.length; i += 2) {
+                utxos.add((UTXO) this.array[i]);
+            }
+        }
+    }
+}
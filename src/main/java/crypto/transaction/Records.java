@@ -0,0 +1,129 @@
+package crypto.transaction;
+
+import crypto.shared.SignatureScheme;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.zip.CRC32;
+
+/**
+ * Binary encoding shared by the on-disk stores. Unlike the raw data of a transaction, which is
+ * only hashed and signed, every field is length prefixed so that records can be decoded again.
+ */
+final class Records {
+
+    /** Length written for a missing byte array */
+    private static final int NULL_LENGTH = -1;
+
+    /** Scheme byte of an output without address */
+    private static final byte NO_ADDRESS = -1;
+
+    private Records() {
+    }
+
+    /**
+     * @param bytes Byte array, may be null
+     * @return Number of bytes written by {@link #writeBytes(ByteBuffer, byte[])}
+     */
+    static int getBytesSize(byte[] bytes) {
+
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    /**
+     * Write a length prefixed byte array
+     * @param buffer Target buffer
+     * @param bytes Byte array, may be null
+     */
+    static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+
+        if (bytes == null) {
+
+            buffer.putInt(NULL_LENGTH);
+
+        } else {
+
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Read a byte array written by {@link #writeBytes(ByteBuffer, byte[])}
+     * @param buffer Source buffer
+     * @return Byte array, may be null
+     */
+    static byte[] readBytes(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param output Transaction output
+     * @return Number of bytes written by {@link #writeOutput(ByteBuffer, TransactionOutput)}
+     */
+    static int getOutputSize(TransactionOutput output) {
+
+        return Long.BYTES + 1 + getBytesSize(output.getEncodedAddress());
+    }
+
+    /**
+     * Write value, scheme and encoding of the address of an output
+     * @param buffer Target buffer
+     * @param output Transaction output
+     */
+    static void writeOutput(ByteBuffer buffer, TransactionOutput output) {
+
+        byte[] address = output.getEncodedAddress();
+
+        buffer.putLong(output.value);
+        buffer.put(address == null ? NO_ADDRESS : (byte) SignatureScheme.of(output.getAddress()).ordinal());
+        writeBytes(buffer, address);
+    }
+
+    /**
+     * Read an output, its address is interned in {@code addresses} and decoded only once
+     * @param buffer Source buffer
+     * @param addresses Registry of the reading store
+     * @return Transaction output
+     */
+    static TransactionOutput readOutput(ByteBuffer buffer, AddressRegistry addresses) {
+
+        long value = buffer.getLong();
+        byte scheme = buffer.get();
+        byte[] encoded = readBytes(buffer);
+
+        if (scheme == NO_ADDRESS) {
+            return new TransactionOutput(value, null);
+        }
+
+        try {
+
+            return addresses.newOutput(addresses.intern(SignatureScheme.values()[scheme], encoded), value);
+
+        } catch (GeneralSecurityException e) {
+
+            throw new IllegalStateException("Stored address cannot be decoded", e);
+        }
+    }
+
+    /**
+     * CRC32 of the bytes {@code from} (inclusive) to {@code to} (exclusive), independent of the buffer position
+     */
+    static int checksum(ByteBuffer buffer, int from, int to) {
+
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+}
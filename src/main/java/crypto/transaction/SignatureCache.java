@@ -0,0 +1,178 @@
+package crypto.transaction;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded, thread-safe cache of signature verification results.
+ * An entry is keyed by the hash of the transaction, the index of the input and the public key the
+ * input was verified against. The transaction hash covers the inputs with their signatures and all
+ * outputs, i.e. the signed message, so the key determines the outcome of the verification.
+ * The cache is split into independently locked segments, each evicting its least recently used entry.
+ */
+public class SignatureCache {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Build cache
+     * @param capacity Maximum number of verification results kept
+     */
+    public SignatureCache(int capacity) {
+
+        this(capacity, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Build cache
+     * @param capacity Maximum number of verification results kept
+     * @param numSegments Number of independently locked segments
+     */
+    public SignatureCache(int capacity, int numSegments) {
+
+        if (capacity < numSegments || numSegments < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Capacity %d must be at least the number of segments %d", capacity, numSegments));
+        }
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            this.segments[i] = new Segment(capacity / numSegments);
+        }
+    }
+
+    /**
+     * Return the cached verification result or verify and cache the result
+     * @param txHash Hash of the transaction
+     * @param inputIndex Index of the input
+     * @param publicKey Public key the signature is verified against
+     * @param verification Verifies the signature if the result is not cached
+     * @return True if the signature is valid, otherwise false
+     */
+    public boolean verify(byte[] txHash, int inputIndex, PublicKey publicKey, BooleanSupplier verification) {
+
+        Key key = new Key(txHash, inputIndex, publicKey);
+        Segment segment = this.segments[(key.hashCode() & Integer.MAX_VALUE) % this.segments.length];
+
+        Boolean valid;
+        synchronized (segment) {
+            valid = segment.get(key);
+        }
+        if (valid != null) {
+
+            this.hits.increment();
+            return valid;
+        }
+        this.misses.increment();
+
+        // Verify outside of the lock, concurrent misses on the same key verify twice
+        boolean result = verification.getAsBoolean();
+        synchronized (segment) {
+            segment.put(key, result);
+        }
+        return result;
+    }
+
+    /** @return Number of verifications answered from the cache */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /** @return Number of verifications that had to be computed */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /** @return Number of cached verification results */
+    public int size() {
+
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove all cached results, the counters are kept
+     */
+    public void clear() {
+
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Segment of the cache in access order, evicting the least recently used entry
+     */
+    private static class Segment extends LinkedHashMap<Key, Boolean> {
+
+        private final int capacity;
+
+        Segment(int capacity) {
+
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+
+            return this.size() > this.capacity;
+        }
+    }
+
+    /**
+     * (transaction hash, input index, public key)
+     */
+    private static final class Key {
+
+        private final byte[] txHash;
+        private final int inputIndex;
+        private final PublicKey publicKey;
+        private final int hash;
+
+        Key(byte[] txHash, int inputIndex, PublicKey publicKey) {
+
+            this.txHash = txHash;
+            this.inputIndex = inputIndex;
+            this.publicKey = publicKey;
+            this.hash = KeyHash.hashCode(txHash, inputIndex);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+
+            return this.inputIndex == other.inputIndex &&
+                   Arrays.equals(this.txHash, other.txHash) &&
+                   this.publicKey.equals(other.publicKey);
+        }
+
+        @Override
+        public int hashCode() {
+
+            return this.hash;
+        }
+    }
+}
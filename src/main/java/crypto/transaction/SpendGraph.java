@@ -0,0 +1,205 @@
+package crypto.transaction;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Spend graph of the transactions proposed in an epoch.
+ * There is an edge from transaction p to transaction c if an input of c claims an output of p,
+ * i.e. the input's {@code prevTxHash} equals the hash of p. Edges are stored in compressed
+ * sparse row form, so building and walking the graph costs O(n + inputs).
+ * Transactions are further grouped into independent components: two transactions share a component
+ * if one spends the other or if both claim the same outpoint.
+ */
+class SpendGraph {
+
+    /** The proposed transactions */
+    private final Transaction[] txs;
+
+    /** Children of transaction n are {@code children[childOffsets[n]] .. children[childOffsets[n + 1] - 1]} */
+    private final int[] childOffsets;
+    private final int[] children;
+
+    /** Number of edges pointing to each transaction */
+    private final int[] inDegree;
+
+    /** Union-find parent used to compute the components */
+    private final int[] root;
+
+    /**
+     * Build the spend graph of an epoch
+     * @param txs Proposed transactions
+     */
+    SpendGraph(Transaction[] txs) {
+
+        this.txs = txs;
+
+        int numTxs = txs.length;
+
+        // Hashes can occur more than once if a transaction is proposed twice
+        HashMap<ByteBuffer, int[]> txsByHash = new HashMap<>();
+        for (int n = 0; n < numTxs; n++) {
+
+            ByteBuffer key = ByteBuffer.wrap(txs[n].getHash());
+            int[] indices = txsByHash.get(key);
+            if (indices == null) {
+                txsByHash.put(key, new int[] {n});
+            } else {
+                int[] extended = Arrays.copyOf(indices, indices.length + 1);
+                extended[indices.length] = n;
+                txsByHash.put(key, extended);
+            }
+        }
+
+        this.root = new int[numTxs];
+        for (int n = 0; n < numTxs; n++) {
+            this.root[n] = n;
+        }
+
+        // Collect edges as (parent, child) pairs and count the children per parent
+        int[] parentOf = new int[16];
+        int[] childOf = new int[16];
+        int numEdges = 0;
+        int[] numChildren = new int[numTxs];
+        this.inDegree = new int[numTxs];
+
+        HashMap<UTXO, Integer> claims = new HashMap<>();
+
+        for (int c = 0; c < numTxs; c++) {
+
+            for (TransactionInput input : txs[c].getInputs()) {
+
+                // Transactions claiming the same outpoint have to be validated together
+                Integer claimant = claims.putIfAbsent(new UTXO(input.prevTxHash, input.outputIndex), c);
+                if (claimant != null) {
+                    this.union(claimant, c);
+                }
+
+                int[] parents = txsByHash.get(ByteBuffer.wrap(input.prevTxHash));
+                if (parents == null) {
+                    continue;
+                }
+                for (int p : parents) {
+
+                    if (p == c) {
+                        continue;
+                    }
+                    if (numEdges == parentOf.length) {
+                        parentOf = Arrays.copyOf(parentOf, 2 * numEdges);
+                        childOf = Arrays.copyOf(childOf, 2 * numEdges);
+                    }
+                    parentOf[numEdges] = p;
+                    childOf[numEdges] = c;
+                    numEdges++;
+
+                    numChildren[p]++;
+                    this.inDegree[c]++;
+                    this.union(p, c);
+                }
+            }
+        }
+
+        this.childOffsets = new int[numTxs + 1];
+        for (int n = 0; n < numTxs; n++) {
+            this.childOffsets[n + 1] = this.childOffsets[n] + numChildren[n];
+        }
+        this.children = new int[numEdges];
+        int[] next = Arrays.copyOf(this.childOffsets, numTxs);
+        for (int e = 0; e < numEdges; e++) {
+            this.children[next[parentOf[e]]++] = childOf[e];
+        }
+    }
+
+    /** @return Number of transactions in the graph */
+    int size() {
+        return txs.length;
+    }
+
+    /** @return The nth transaction */
+    Transaction getTx(int n) {
+        return txs[n];
+    }
+
+    /** @return Copy of the number of edges pointing to each transaction */
+    int[] getInDegrees() {
+        return inDegree.clone();
+    }
+
+    /** @return Index of the first child of transaction {@code n} in {@link #getChild(int)} */
+    int firstChild(int n) {
+        return childOffsets[n];
+    }
+
+    /** @return Index one past the last child of transaction {@code n} */
+    int lastChild(int n) {
+        return childOffsets[n + 1];
+    }
+
+    /** @return The child stored at position {@code e} */
+    int getChild(int e) {
+        return children[e];
+    }
+
+    /**
+     * Independent components of the graph.
+     * Components are ordered by their smallest transaction index, the indices within
+     * a component are ascending.
+     * @return List of components, each being an array of transaction indices
+     */
+    List<int[]> getComponents() {
+
+        int numTxs = txs.length;
+        int[] componentOf = new int[numTxs];
+        int[] componentSize = new int[numTxs];
+        int numComponents = 0;
+
+        // Representative -> component id, assigned in order of the smallest member
+        int[] idOfRoot = new int[numTxs];
+        Arrays.fill(idOfRoot, -1);
+        for (int n = 0; n < numTxs; n++) {
+
+            int r = this.find(n);
+            if (idOfRoot[r] < 0) {
+                idOfRoot[r] = numComponents++;
+            }
+            componentOf[n] = idOfRoot[r];
+            componentSize[componentOf[n]]++;
+        }
+
+        List<int[]> components = new ArrayList<>(numComponents);
+        for (int id = 0; id < numComponents; id++) {
+            components.add(new int[componentSize[id]]);
+        }
+        int[] filled = new int[numComponents];
+        for (int n = 0; n < numTxs; n++) {
+            components.get(componentOf[n])[filled[componentOf[n]]++] = n;
+        }
+        return components;
+    }
+
+    private int find(int n) {
+
+        while (root[n] != n) {
+            root[n] = root[root[n]];
+            n = root[n];
+        }
+        return n;
+    }
+
+    private void union(int a, int b) {
+
+        int ra = this.find(a);
+        int rb = this.find(b);
+        if (ra != rb) {
+            // Keep the smaller index as representative
+            if (ra < rb) {
+                root[rb] = ra;
+            } else {
+                root[ra] = rb;
+            }
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package crypto.transaction;
 
 import crypto.shared.Base58;
-import crypto.shared.Helper;
+import crypto.shared.Crypto;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.util.ArrayList;
 
@@ -14,6 +14,8 @@ import java.util.ArrayList;
  * The class also contains methods to add and remove an input, add an output, compute digests to sign/hash,
  * add a signature to an input, and compute and store the hash of the transaction once all inputs/outputs/signatures
  * have been added.
+ * The hash and the serialized outputs are cached and reset by the methods of this class that modify the
+ * transaction. Callers modifying inputs or outputs directly have to call {@link #invalidateCaches()}.
  */
 public class Transaction {
 
@@ -25,6 +27,9 @@ public class Transaction {
 
     private ArrayList<TransactionOutput> outputs;
 
+    /** Serialized outputs, shared by the hash and the data to sign of every input */
+    private byte[] outputsData;
+
     /**
      * Constructor
      */
@@ -40,7 +45,8 @@ public class Transaction {
      */
     public Transaction(Transaction transaction) {
 
-        this.hash = transaction.hash.clone();
+        this.hash = transaction.hash == null ? null : transaction.hash.clone();
+        this.outputsData = transaction.outputsData;
         this.inputs = new ArrayList<>(transaction.inputs);
         this.outputs = new ArrayList<>(transaction.outputs);
     }
@@ -54,17 +60,27 @@ public class Transaction {
 
         TransactionInput input = new TransactionInput(prevTxHash, outputIndex);
         this.inputs.add(input);
+        this.invalidateCaches();
     }
 
     /**
      * Add output to transaction
-     * @param value value
+     * @param value Value in base units, see {@link Amount}
      * @param address Public key to which value is paid
      */
-    public void addOutput(double value, PublicKey address) {
+    public void addOutput(long value, PublicKey address) {
+
+        this.addOutput(new TransactionOutput(value, address));
+    }
+
+    /**
+     * Add output to transaction
+     * @param output Output to be added
+     */
+    public void addOutput(TransactionOutput output) {
 
-        TransactionOutput output = new TransactionOutput(value, address);
         this.outputs.add(output);
+        this.invalidateCaches();
     }
 
     /**
@@ -74,6 +90,7 @@ public class Transaction {
     public void removeInput(int index) {
 
         inputs.remove(index);
+        this.invalidateCaches();
     }
 
     /**
@@ -82,15 +99,17 @@ public class Transaction {
      */
     public void removeInput(UTXO ut) {
 
+        UTXO.Probe probe = new UTXO.Probe();
         for (int i = 0; i < this.inputs.size(); i++) {
 
             TransactionInput input = this.inputs.get(i);
 
-            UTXO utxo = new UTXO(input.prevTxHash, input.outputIndex);
+            UTXO utxo = probe.wrap(input.prevTxHash, input.outputIndex);
 
             if (utxo.equals(ut)) {
 
                 this.inputs.remove(i);
+                this.invalidateCaches();
                 return;
             }
         }
@@ -103,18 +122,65 @@ public class Transaction {
      */
     public byte[] getRawDataToSign(int index) {
 
-        if (index > this.inputs.size()) {
+        if (index >= this.inputs.size()) {
             return null;
         }
-        TransactionInput input = this.inputs.get(index);
+        ByteBuffer buffer = ByteBuffer.allocate(this.getRawDataToSignSize(index));
+        this.writeRawDataToSign(index, buffer);
+
+        return buffer.array();
+    }
+
+    /**
+     * @param index Index of of the ith input
+     * @return Number of bytes written by {@link #writeRawDataToSign(int, ByteBuffer)}
+     */
+    public int getRawDataToSignSize(int index) {
 
-        // Get bytes of ith input
-        final ArrayList<Byte> signatureData = new ArrayList<>(input.getRawDataWithoutSignature());
+        return this.inputs.get(index).getRawDataSizeWithoutSignature() + this.getOutputsRawData().length;
+    }
 
-        // Get byte data of a all outputs
-        this.outputs.forEach(output -> signatureData.addAll(output.getRawData()));
+    /**
+     * Write the raw data that is to be signed: the ith input without signature followed by all outputs
+     * @param index Index of of the ith input
+     * @param buffer Buffer with at least {@link #getRawDataToSignSize(int)} bytes remaining
+     */
+    public void writeRawDataToSign(int index, ByteBuffer buffer) {
 
-        return Helper.convertToByteArray(signatureData);
+        this.inputs.get(index).writeRawDataWithoutSignature(buffer);
+        buffer.put(this.getOutputsRawData());
+    }
+
+    /**
+     * Serialized outputs of the transaction. They are serialized once and reused for the
+     * data to sign of every input and for the hash of the transaction.
+     * @return Raw data of all outputs, must not be modified
+     */
+    public byte[] getOutputsRawData() {
+
+        if (this.outputsData == null) {
+
+            int size = 0;
+            for (TransactionOutput output : this.outputs) {
+                size += output.getRawDataSize();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (TransactionOutput output : this.outputs) {
+                output.writeRawData(buffer);
+            }
+            this.outputsData = buffer.array();
+        }
+        return this.outputsData;
+    }
+
+    /**
+     * Reset the cached hash and serialized outputs, needed after inputs or outputs
+     * have been modified without using the methods of this class
+     */
+    public void invalidateCaches() {
+
+        this.hash = null;
+        this.outputsData = null;
     }
 
     /**
@@ -125,42 +191,62 @@ public class Transaction {
     public void addSignature(byte[] signature, int index) {
 
         this.inputs.get(index).addSignature(signature);
+        this.hash = null;
     }
 
     /**
      * Get raw data of transaction
-     * @return Raw data in form of bytes<
+     * @return Raw data in form of bytes
      */
     public byte[] getRawData() {
 
-        ArrayList<Byte> rawData = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(this.getRawDataSize());
+        this.writeRawData(buffer);
+
+        return buffer.array();
+    }
 
-        this.inputs.forEach(input -> rawData.addAll(input.getRawDataWithSignature()));
-        this.outputs.forEach(output -> rawData.addAll(output.getRawData()));
+    /**
+     * @return Number of bytes written by {@link #writeRawData(ByteBuffer)}
+     */
+    public int getRawDataSize() {
 
-        return Helper.convertToByteArray(rawData);
+        int size = this.getOutputsRawData().length;
+        for (TransactionInput input : this.inputs) {
+            size += input.getRawDataSizeWithSignature();
+        }
+        return size;
+    }
+
+    /**
+     * Write raw data of transaction: all inputs with signatures followed by all outputs
+     * @param buffer Buffer with at least {@link #getRawDataSize()} bytes remaining
+     */
+    public void writeRawData(ByteBuffer buffer) {
+
+        for (TransactionInput input : this.inputs) {
+            input.writeRawDataWithSignature(buffer);
+        }
+        buffer.put(this.getOutputsRawData());
     }
 
     /**
      * Returns the transaction hash. It is used as a reference by
-     * transaction inputs via outpoints.
+     * transaction inputs via outpoints. The fields are streamed into the digest
+     * without building the raw data of the transaction.
     */
     public byte[] getHash() {
 
         if(this.hash == null) {
 
-            try {
+            MessageDigest messageDigest = Crypto.getEngine().getHashDigest();
 
-                MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-
-                messageDigest.update(this.getRawData());
-
-                this.hash = messageDigest.digest();
-
-            } catch (NoSuchAlgorithmException exception) {
-
-                exception.printStackTrace(System.err);
+            for (TransactionInput input : this.inputs) {
+                input.updateWithSignature(messageDigest);
             }
+            messageDigest.update(this.getOutputsRawData());
+
+            this.hash = messageDigest.digest();
         }
         return this.hash;
     }
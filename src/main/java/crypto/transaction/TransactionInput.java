@@ -1,8 +1,10 @@
 package crypto.transaction;
 
 import crypto.shared.Base58;
+import crypto.shared.Helper;
 
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -53,27 +55,77 @@ public class TransactionInput {
     }
 
     /**
-     * Get raw data of input without signature that can be used for signature
-     * @return List of bytes
+     * @return Number of bytes written by {@link #writeRawDataWithoutSignature(ByteBuffer)}
      */
-    public ArrayList<Byte> getRawDataWithoutSignature() {
+    public int getRawDataSizeWithoutSignature() {
+
+        return (this.prevTxHash == null ? 0 : this.prevTxHash.length) + Integer.BYTES;
+    }
+
+    /**
+     * @return Number of bytes written by {@link #writeRawDataWithSignature(ByteBuffer)}
+     */
+    public int getRawDataSizeWithSignature() {
+
+        return this.getRawDataSizeWithoutSignature() + (this.signature == null ? 0 : this.signature.length);
+    }
 
-        ArrayList<Byte> rawData = new ArrayList<>();
+    /**
+     * Write raw data of input without signature that can be used for signature
+     * @param buffer Buffer with at least {@link #getRawDataSizeWithoutSignature()} bytes remaining
+     */
+    public void writeRawDataWithoutSignature(ByteBuffer buffer) {
 
         // Add previous hash to signature data
         if (this.prevTxHash != null) {
-            for (byte b : this.prevTxHash) {
-                rawData.add(b);
-            }
+            buffer.put(this.prevTxHash);
         }
         // Add output index to signature data
-        ByteBuffer outputIndexBytes = ByteBuffer.allocate(Integer.SIZE / 8);
-        outputIndexBytes.putInt(this.outputIndex);
+        buffer.putInt(this.outputIndex);
+    }
 
-        for (byte b : outputIndexBytes.array()) {
-            rawData.add(b);
+    /**
+     * Write raw data with signature
+     * @param buffer Buffer with at least {@link #getRawDataSizeWithSignature()} bytes remaining
+     */
+    public void writeRawDataWithSignature(ByteBuffer buffer) {
+
+        this.writeRawDataWithoutSignature(buffer);
+        if (this.signature != null) {
+            buffer.put(this.signature);
         }
-        return rawData;
+    }
+
+    /**
+     * Feed the raw data with signature into a digest, byte for byte the same as
+     * {@link #writeRawDataWithSignature(ByteBuffer)}
+     * @param digest Message digest
+     */
+    public void updateWithSignature(MessageDigest digest) {
+
+        if (this.prevTxHash != null) {
+            digest.update(this.prevTxHash);
+        }
+        digest.update((byte) (this.outputIndex >>> 24));
+        digest.update((byte) (this.outputIndex >>> 16));
+        digest.update((byte) (this.outputIndex >>> 8));
+        digest.update((byte) this.outputIndex);
+
+        if (this.signature != null) {
+            digest.update(this.signature);
+        }
+    }
+
+    /**
+     * Get raw data of input without signature that can be used for signature
+     * @return List of bytes
+     */
+    public ArrayList<Byte> getRawDataWithoutSignature() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(this.getRawDataSizeWithoutSignature());
+        this.writeRawDataWithoutSignature(buffer);
+
+        return Helper.convertToByteList(buffer.array());
     }
 
     /**
@@ -82,14 +134,10 @@ public class TransactionInput {
      */
     public ArrayList<Byte> getRawDataWithSignature() {
 
-        ArrayList<Byte> rawData = new ArrayList<>(this.getRawDataWithoutSignature());
-        if (signature != null) {
+        ByteBuffer buffer = ByteBuffer.allocate(this.getRawDataSizeWithSignature());
+        this.writeRawDataWithSignature(buffer);
 
-            for (byte aSignature : this.signature) {
-                rawData.add(aSignature);
-            }
-        }
-        return rawData;
+        return Helper.convertToByteList(buffer.array());
     }
 
     @Override
@@ -1,6 +1,7 @@
 package crypto.transaction;
 
 import crypto.shared.Base58;
+import crypto.shared.Helper;
 
 import java.nio.ByteBuffer;
 import java.security.PublicKey;
@@ -11,49 +12,105 @@ import java.util.ArrayList;
  */
 public class TransactionOutput {
 
-    /** The value of the output */
-    public double value;
+    /** The value of the output in base units, see {@link Amount} */
+    public long value;
 
     /** The address or public key of the recipient */
     public PublicKey address;
 
+    /** Shared X.509 encoding of {@link #encodedFor}, looked up on first use, see {@link AddressEncodings} */
+    private byte[] encodedAddress;
+    private PublicKey encodedFor;
+
     /**
      * Constructor
-     * @param value Value of the output
+     * @param value Value of the output in base units
      * @param address Public key to which the value is paid
      */
-    public TransactionOutput(double value, PublicKey address) {
+    public TransactionOutput(long value, PublicKey address) {
 
         this.value = value;
         this.address = address;
     }
 
     /**
-     * Get raw data of output that can be used for signature
-     * @return List of bytes
+     * Constructor for outputs whose address has been interned, the encoding is not looked up again
+     * @param value Value of the output in base units
+     * @param address Public key to which the value is paid
+     * @param encodedAddress Shared X.509 encoding of {@code address}, not to be modified
      */
-    public ArrayList<Byte> getRawData() {
+    TransactionOutput(long value, PublicKey address, byte[] encodedAddress) {
 
-        ArrayList<Byte> rawData = new ArrayList<>();
+        this.set(value, address, encodedAddress);
+    }
 
-        ByteBuffer valueBytes = ByteBuffer.allocate(Double.SIZE / 8);
-        valueBytes.putDouble(this.value);
+    /**
+     * Overwrite the output, used by pools filling an output owned by the caller
+     */
+    void set(long value, PublicKey address, byte[] encodedAddress) {
 
-        for (byte b : valueBytes.array()) {
-            rawData.add(b);
-        }
+        this.value = value;
+        this.address = address;
+        this.encodedAddress = encodedAddress;
+        this.encodedFor = address;
+    }
+
+    /** @return The address or public key of the recipient, same as {@link #address} */
+    public PublicKey getAddress() {
+
+        return this.address;
+    }
+
+    /**
+     * @return X.509 encoding of the address, null if there is none. It is shared by all outputs paying
+     *         the address and must not be modified.
+     */
+    public byte[] getEncodedAddress() {
+
+        byte[] encoded = this.encodedAddress;
+        if (encoded == null || this.encodedFor != this.address) {
 
-        byte[] addressBytes = this.address.getEncoded();
-        for (byte b : addressBytes) {
-            rawData.add(b);
+            // Racing readers at worst look the encoding up twice
+            encoded = AddressEncodings.of(this.address);
+            this.encodedFor = this.address;
+            this.encodedAddress = encoded;
         }
+        return encoded;
+    }
+
+    /**
+     * @return Number of bytes written by {@link #writeRawData(ByteBuffer)}
+     */
+    public int getRawDataSize() {
+
+        return Long.BYTES + this.getEncodedAddress().length;
+    }
+
+    /**
+     * Write raw data of output that can be used for signature
+     * @param buffer Buffer with at least {@link #getRawDataSize()} bytes remaining
+     */
+    public void writeRawData(ByteBuffer buffer) {
+
+        buffer.putLong(this.value);
+        buffer.put(this.getEncodedAddress());
+    }
+
+    /**
+     * Get raw data of output that can be used for signature
+     * @return List of bytes
+     */
+    public ArrayList<Byte> getRawData() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(this.getRawDataSize());
+        this.writeRawData(buffer);
 
-        return rawData;
+        return Helper.convertToByteList(buffer.array());
     }
 
     @Override
     public String toString() {
 
-        return String.format("$ %f --> %s", this.value, Base58.encode(this.address.getEncoded()));
+        return String.format("$ %s --> %s", Amount.format(this.value), Base58.encode(this.getEncodedAddress()));
     }
 }
@@ -1,31 +1,165 @@
 package crypto.transaction;
 
+import crypto.metrics.Counter;
+import crypto.metrics.Histogram;
+import crypto.metrics.Metrics;
 import crypto.shared.Crypto;
-import crypto.shared.Helper;
+import crypto.shared.CryptoEngine;
 import org.apache.log4j.Logger;
 
+import java.nio.ByteBuffer;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class TxHandler {
 
     final static Logger logger = Logger.getLogger(TxHandler.class);
 
+    /** Number of transactions below which signatures are verified without further splitting */
+    private static final int SIGNATURE_BATCH_THRESHOLD = 16;
+
+    /** Number of inputs up to which duplicates are found by comparing all pairs instead of hashing */
+    private static final int PAIRWISE_DUPLICATE_CHECK_LIMIT = 8;
+
+    private static final String VALIDATED_PREFIX = "txhandler.validated.";
+    private static final String SIGNATURE_NANOS = "txhandler.signature.nanos";
+    private static final String EPOCH_NANOS = "txhandler.epoch.nanos";
+
     /**
      * Pool of all unspent transaction outputs (value --> address), which is essentially a list
      * of all value hold by the addresses the value was sent to.
      */
-    public UTXOPool utxoPool;
+    public UTXOStore utxoPool;
+
+    /** Pool used to verify the signatures of an epoch in batch mode */
+    private final ForkJoinPool forkJoinPool;
+
+    /** Cache of signature verification results, or null if signatures are always verified */
+    private SignatureCache signatureCache;
+
+    /** Engine verifying the signatures */
+    private CryptoEngine cryptoEngine = Crypto.getEngine();
+
+    /** Registry the instruments below belong to, disabled by default */
+    private Metrics metrics = Metrics.DISABLED;
+
+    /** Number of validated transactions per {@link ValidationResult.Reason} */
+    private Counter[] validatedTxs = validationCounters(Metrics.DISABLED);
+
+    /** Time spent verifying a signature (cache misses only) */
+    private Histogram signatureNanos = Metrics.DISABLED.histogram(SIGNATURE_NANOS);
+
+    /** Time spent handling an epoch */
+    private Histogram epochNanos = Metrics.DISABLED.histogram(EPOCH_NANOS);
 
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
-     * {@code utxoPool}. This should make a copy of utxoPool by using the UTXOPool(UTXOPool uPool)
-     * constructor.
+     * {@code utxoPool}. This makes a copy of utxoPool by using {@link UTXOStore#copy()}, which is
+     * cheap for a {@link PersistentUTXOPool}.
+     */
+    public TxHandler(UTXOStore utxoPool) {
+
+        this(utxoPool, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a public ledger whose current UTXOPool is a copy of {@code utxoPool}
+     * @param utxoPool Pool of unspent transaction outputs
+     * @param forkJoinPool Pool used by {@link #handleTxsInBatch(Transaction[])} to verify signatures
+     */
+    public TxHandler(UTXOStore utxoPool, ForkJoinPool forkJoinPool) {
+
+        this(utxoPool, forkJoinPool, true);
+    }
+
+    /**
+     * @param copy True to work on a copy of {@code utxoPool}, false to work on the pool itself
+     */
+    private TxHandler(UTXOStore utxoPool, ForkJoinPool forkJoinPool, boolean copy) {
+
+        this.utxoPool = copy ? utxoPool.copy() : utxoPool;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Creates a public ledger working directly on {@code utxoPool} instead of a copy, e.g. on a
+     * {@link DurableUTXOPool} so that the changes of each epoch are committed to its log
+     * @param utxoPool Pool of unspent transaction outputs, changed by the ledger
+     * @return Ledger
+     */
+    public static TxHandler onPool(UTXOStore utxoPool) {
+
+        return onPool(utxoPool, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a public ledger working directly on {@code utxoPool} instead of a copy
+     * @param utxoPool Pool of unspent transaction outputs, changed by the ledger
+     * @param forkJoinPool Pool used by {@link #handleTxsInBatch(Transaction[])} to verify signatures
+     * @return Ledger
+     */
+    public static TxHandler onPool(UTXOStore utxoPool, ForkJoinPool forkJoinPool) {
+
+        return new TxHandler(utxoPool, forkJoinPool, false);
+    }
+
+    /**
+     * Use a cache of signature verification results, which may be shared with other handlers
+     * @param signatureCache Signature cache, or null to always verify signatures
+     */
+    public void setSignatureCache(SignatureCache signatureCache) {
+
+        this.signatureCache = signatureCache;
+    }
+
+    public SignatureCache getSignatureCache() {
+        return signatureCache;
+    }
+
+    /**
+     * Verify signatures with the given engine instead of the one of {@link Crypto}
+     * @param cryptoEngine Crypto engine
+     */
+    public void setCryptoEngine(CryptoEngine cryptoEngine) {
+
+        this.cryptoEngine = cryptoEngine;
+    }
+
+    public CryptoEngine getCryptoEngine() {
+        return cryptoEngine;
+    }
+
+    /**
+     * Record validation outcomes ({@code txhandler.validated.<reason>}), signature verification and
+     * epoch latencies in {@code metrics}. See {@link UTXOPool#setMetrics(Metrics)} for the UTXO lookups.
+     * @param metrics Metrics registry, {@link Metrics#DISABLED} to turn recording off
      */
-    public TxHandler(UTXOPool utxoPool) {
+    public void setMetrics(Metrics metrics) {
+
+        this.metrics = metrics;
+        this.validatedTxs = validationCounters(metrics);
+        this.signatureNanos = metrics.histogram(SIGNATURE_NANOS);
+        this.epochNanos = metrics.histogram(EPOCH_NANOS);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    private static Counter[] validationCounters(Metrics metrics) {
 
-        this.utxoPool = new UTXOPool(utxoPool);
+        ValidationResult.Reason[] reasons = ValidationResult.Reason.values();
+        Counter[] counters = new Counter[reasons.length];
+        for (ValidationResult.Reason reason : reasons) {
+            counters[reason.ordinal()] = metrics.counter(VALIDATED_PREFIX + reason.name().toLowerCase());
+        }
+        return counters;
     }
 
     /**
@@ -39,65 +173,237 @@ public class TxHandler {
      */
     public boolean isValidTx(Transaction tx) {
 
+        return this.validateTx(tx, null).isValid();
+    }
+
+    /**
+     * Validate a transaction, running the cheap checks before any signature is verified:
+     * non-negative outputs (4), distinct inputs (3), claimed UTXOs in the pool (1), balance (5)
+     * and finally the signatures (2)
+     * @param tx Transaction
+     * @return Result naming the first failed check and the failing input, see {@link ValidationResult}
+     */
+    public ValidationResult validateTx(Transaction tx) {
+
+        return this.validateTx(tx, null);
+    }
+
+    /**
+     * Same as {@link #validateTx(Transaction)}, but takes the outcome of check (2) from
+     * {@code verifiedSignatures} if it has been computed in advance
+     * @param tx Transaction
+     * @param verifiedSignatures {@code verifiedSignatures[i]} is true iff the signature of the ith input is valid,
+     *                           or null if the signatures are to be verified here
+     * @return Validation result
+     */
+    private ValidationResult validateTx(Transaction tx, boolean[] verifiedSignatures) {
+
+        ValidationResult result = this.runChecks(tx, verifiedSignatures);
+        this.validatedTxs[result.getReason().ordinal()].increment();
+        return result;
+    }
+
+    /**
+     * The checks of {@link #validateTx(Transaction, boolean[])}, cheapest first
+     */
+    private ValidationResult runChecks(Transaction tx, boolean[] verifiedSignatures) {
+
+        long totalOutput = sumOutputs(tx);
+        if (totalOutput < 0) {
+            return outputFailure(tx, totalOutput);
+        }
+        ValidationResult result = checkDuplicateInputs(tx);
+        if (!result.isValid()) {
+            return result;
+        }
+
         // (1) All outputs claimed by transaction are in the current UTXO pool:
-        // All output claimed as inputs for transaction are
-        // unspent transaction outputs (UTXOs). In other words,
-        // I can only spend stuff, that wasn't spent before
-        ArrayList<UTXO> claimedUtxos = new ArrayList<>();
+        // I can only spend stuff, that wasn't spent before. Only the addresses are kept, so that
+        // pools filling the reused output do not allocate per lookup
+        PublicKey[] claimedAddresses = new PublicKey[tx.numberOfInputs()];
+        TransactionOutput claimed = new TransactionOutput(0, null);
+        UTXO.Probe probe = new UTXO.Probe();
+        long totalInput = 0;
+        boolean overflow = false;
+        for (int index = 0; index < claimedAddresses.length; index++) {
 
-        for (TransactionInput input: tx.getInputs()) {
+            TransactionInput input = tx.getInput(index);
+            TransactionOutput output = this.utxoPool.getTxOutput(probe.wrap(input.prevTxHash, input.outputIndex), claimed);
+            if (output == null) {
+                return ValidationResult.invalid(ValidationResult.Reason.MISSING_UTXO, index);
+            }
+            if (output.value < 0) {
+                return ValidationResult.invalid(ValidationResult.Reason.NEGATIVE_INPUT, index);
+            }
+            claimedAddresses[index] = output.address;
+
+            // The values summed are non-negative, so the sum overflowed iff it is negative
+            totalInput += output.value;
+            overflow |= totalInput < 0;
+        }
+
+        // (5) the sum of {@code transaction}s input values is greater than or equal to the sum of its output values
+        if (overflow) {
+            return ValidationResult.invalid(ValidationResult.Reason.VALUE_OVERFLOW, -1);
+        }
+        if (totalOutput > totalInput) {
+            return ValidationResult.invalid(ValidationResult.Reason.INSUFFICIENT_INPUT, -1);
+        }
+
+        // (2) The signature on each input of {@code transaction} is valid, verified against the
+        // output of a previous transaction that generated the UTXO the user has control of
+        for (int index = 0; index < claimedAddresses.length; index++) {
 
-            UTXO utxo = new UTXO(input.prevTxHash, input.outputIndex);
-            if(this.utxoPool.contains(utxo)) {
-                claimedUtxos.add(utxo);
-            } else {
-                return false;
+            boolean valid = verifiedSignatures != null ?
+                    verifiedSignatures[index] :
+                    this.verifySignature(tx, index, claimedAddresses[index]);
+
+            if (!valid) {
+                return ValidationResult.invalid(ValidationResult.Reason.INVALID_SIGNATURE, index);
             }
         }
+        return ValidationResult.VALID;
+    }
 
-        // (2) The signature on each input of {@code transaction} is valid,
-        for (TransactionInput input: tx.getInputs()) {
+    /**
+     * Checks that do not depend on the UTXO pool, so that they can be run before the claimed outputs exist
+     * @param tx Transaction
+     * @return Invalid result if an output is negative (4), the outputs overflow or a UTXO is claimed multiple times (3)
+     */
+    public static ValidationResult checkStructure(Transaction tx) {
 
-            // UTXO that the user has control of and that was used as
-            // input for the transaction
-            UTXO utxo = new UTXO(input.prevTxHash, input.outputIndex);
+        long totalOutput = sumOutputs(tx);
+        return totalOutput < 0 ? outputFailure(tx, totalOutput) : checkDuplicateInputs(tx);
+    }
 
-            // The corresponding output of a previous transaction
-            // that generated the UTXO
-            TransactionOutput output = this.utxoPool.getTxOutput(utxo);
+    /**
+     * (4) All of {@code transaction}s output values are non-negative, and their sum does not overflow
+     * @param tx Transaction
+     * @return Sum of the output values, or {@code -1 - n} if output {@code n} is negative or makes the sum overflow
+     */
+    private static long sumOutputs(Transaction tx) {
 
-            byte[] signature = input.signature;
-            PublicKey publicKey = output.address;
-            ArrayList<Byte> message = input.getRawDataWithoutSignature();
+        long totalOutput = 0;
+        for (int index = 0; index < tx.numberOfOutputs(); index++) {
 
-            if(!Crypto.verifySignature(publicKey, Helper.convertToByteArray(message), signature)) {
-                return false;
+            long value = tx.getOutput(index).value;
+            // Both terms are non-negative unless the value is, so the sum overflowed iff it is negative
+            totalOutput += value;
+            if (value < 0 || totalOutput < 0) {
+                return -1 - index;
             }
         }
+        return totalOutput;
+    }
 
-        // (3) No UTXO is claimed multiple times by {@code transaction},
-        if (claimedUtxos.stream().distinct().count() < claimedUtxos.size()) {
-            return false;
+    /**
+     * @param failure Negative result of {@link #sumOutputs(Transaction)}
+     * @return Result of the failed output check
+     */
+    private static ValidationResult outputFailure(Transaction tx, long failure) {
+
+        int index = (int) (-1 - failure);
+        return tx.getOutput(index).value < 0 ?
+                ValidationResult.invalid(ValidationResult.Reason.NEGATIVE_OUTPUT, index) :
+                ValidationResult.invalid(ValidationResult.Reason.VALUE_OVERFLOW, -1);
+    }
+
+    /**
+     * (3) No UTXO is claimed multiple times by {@code transaction}, few inputs are compared pairwise
+     */
+    private static ValidationResult checkDuplicateInputs(Transaction tx) {
+
+        int numInputs = tx.numberOfInputs();
+        if (numInputs <= PAIRWISE_DUPLICATE_CHECK_LIMIT) {
+
+            for (int index = 1; index < numInputs; index++) {
+
+                TransactionInput input = tx.getInput(index);
+                for (int other = 0; other < index; other++) {
+
+                    TransactionInput otherInput = tx.getInput(other);
+                    if (input.outputIndex == otherInput.outputIndex &&
+                            Arrays.equals(input.prevTxHash, otherInput.prevTxHash)) {
+                        return ValidationResult.invalid(ValidationResult.Reason.DUPLICATE_INPUT, index);
+                    }
+                }
+            }
+            return ValidationResult.VALID;
         }
 
-        // (4) All of {@code transaction}s output values are non-negative, and
-        if(tx.getOutputs().stream().anyMatch(output -> output.value < 0)) {
-            return false;
+        HashSet<UTXO> claimedUtxos = new HashSet<>();
+        for (int index = 0; index < numInputs; index++) {
+
+            TransactionInput input = tx.getInput(index);
+            if (!claimedUtxos.add(new UTXO(input.prevTxHash, input.outputIndex))) {
+                return ValidationResult.invalid(ValidationResult.Reason.DUPLICATE_INPUT, index);
+            }
         }
+        return ValidationResult.VALID;
+    }
 
-        // (5) the sum of {@code transaction}s input values is greater than or equal to the sum of its output
-        //*     values;
-        double totalOutput = tx.getOutputs()
-                .stream()
-                .mapToDouble(p -> p.value)
-                .sum();
+    /**
+     * Verify the signature of an input against the address of the output it claims.
+     * The signed message is the input without signature. The result is taken from the signature cache if present.
+     * @param tx Transaction
+     * @param index Index of the input
+     * @param publicKey Address of the output claimed by the input
+     * @return True if the signature is valid, otherwise false
+     */
+    private boolean verifySignature(Transaction tx, int index, PublicKey publicKey) {
 
-        double totalInput = claimedUtxos.stream()
-                .map(utxo -> utxoPool.getTxOutput(utxo))
-                .mapToDouble(p -> p.value)
-                .sum();
+        TransactionInput input = tx.getInput(index);
+        byte[] signature = input.signature;
 
-        return !(totalOutput > totalInput);
+        if (this.signatureCache == null) {
+            return this.verifySignature(publicKey, getSignedMessage(input), signature);
+        }
+        return this.signatureCache.verify(tx.getHash(), index, publicKey,
+                () -> this.verifySignature(publicKey, getSignedMessage(input), signature));
+    }
+
+    /**
+     * @return The message the signature of {@code input} is verified over
+     */
+    private static byte[] getSignedMessage(TransactionInput input) {
+
+        ByteBuffer message = ByteBuffer.allocate(input.getRawDataSizeWithoutSignature());
+        input.writeRawDataWithoutSignature(message);
+        return message.array();
+    }
+
+    /**
+     * Verify a signature with the crypto engine, recording the time it takes
+     */
+    private boolean verifySignature(PublicKey publicKey, byte[] message, byte[] signature) {
+
+        long start = this.signatureNanos.start();
+        boolean valid = this.cryptoEngine.verifySignature(publicKey, message, signature);
+        this.signatureNanos.stop(start);
+        return valid;
+    }
+
+    /**
+     * Apply a single transaction if it is valid, without committing the pool. Callers applying several
+     * transactions this way make them durable together by one {@link #commit()}.
+     * @param tx Transaction
+     * @return True if the transaction was valid and has been applied
+     */
+    public boolean acceptTx(Transaction tx) {
+
+        if (!this.isValidTx(tx)) {
+            return false;
+        }
+        this.applyTx(tx);
+        return true;
+    }
+
+    /**
+     * Commit the changes applied since the last commit, see {@link UTXOStore#commit()}
+     */
+    public void commit() {
+
+        this.utxoPool.commit();
     }
 
     /**
@@ -107,28 +413,320 @@ public class TxHandler {
      */
     public Transaction[] handleTxs(Transaction[] possibleTxs) {
 
+        long start = this.epochNanos.start();
+        Transaction[] validTxs = this.applyTxs(possibleTxs, null);
+        this.epochNanos.stop(start);
+
+        return validTxs;
+    }
+
+    /**
+     * Batch variant of {@link #handleTxs(Transaction[])}: the signatures of all inputs of the epoch
+     * are verified in parallel up front, afterwards the UTXO dependent checks and pool updates are
+     * applied in array order. The accepted transactions are exactly those of {@link #handleTxs(Transaction[])}.
+     */
+    public Transaction[] handleTxsInBatch(Transaction[] possibleTxs) {
+
+        long start = this.epochNanos.start();
+        Transaction[] validTxs = this.applyTxs(possibleTxs, this.verifySignatures(possibleTxs));
+        this.epochNanos.stop(start);
+
+        return validTxs;
+    }
+
+    /**
+     * Check each transaction in array order and apply the valid ones to the UTXO pool
+     * @param possibleTxs Proposed transactions
+     * @param verifiedSignatures Signatures verified in advance (one row per transaction), or null
+     * @return Accepted transactions
+     */
+    private Transaction[] applyTxs(Transaction[] possibleTxs, boolean[][] verifiedSignatures) {
+
         List<Transaction> validTxs = new ArrayList<>();
 
-        for (Transaction tx: possibleTxs) {
+        for (int n = 0; n < possibleTxs.length; n++) {
+
+            Transaction tx = possibleTxs[n];
+
+            if(this.validateTx(tx, verifiedSignatures == null ? null : verifiedSignatures[n]).isValid()) {
+
+                this.applyTx(tx);
+                validTxs.add(tx);
+            }
+        }
+        this.utxoPool.commit();
+
+        return validTxs.toArray(new Transaction[0]);
+    }
+
+    /**
+     * Remove the UTXOs claimed by a valid transaction from the pool and add its outputs
+     * @param tx Valid transaction
+     */
+    private void applyTx(Transaction tx) {
+
+        UTXO.Probe probe = new UTXO.Probe();
+        for (TransactionInput input: tx.getInputs()) {
+
+            // Claimed UTXO by input, remove from UTXO-pool
+            utxoPool.removeUTXO(probe.wrap(input.prevTxHash, input.outputIndex));
+        }
+
+        ArrayList<TransactionOutput> outputs =tx.getOutputs();
+        for (int outputIndex = 0;  outputIndex < outputs.size();  outputIndex++) {
+
+            UTXO utxo = new UTXO(tx.getHash(), outputIndex);
+            utxoPool.addUTXO(utxo, outputs.get(outputIndex));
+        }
+    }
+
+    /**
+     * Handles an epoch like {@link #handleTxs(Transaction[])}, but processes the transactions in
+     * dependency order: a transaction spending outputs of transactions proposed later in the epoch
+     * is deferred until all of them have been processed. Hence every transaction that can be made
+     * valid is accepted in a single pass. If no transaction spends the output of a later one, the
+     * result equals the one of {@link #handleTxs(Transaction[])}.
+     * @param possibleTxs Proposed transactions
+     * @return Accepted transactions in the order they were applied
+     */
+    public Transaction[] handleTxsInDependencyOrder(Transaction[] possibleTxs) {
+
+        long start = this.epochNanos.start();
+
+        SpendGraph graph = new SpendGraph(possibleTxs);
+
+        int[] indices = new int[graph.size()];
+        for (int n = 0; n < indices.length; n++) {
+            indices[n] = n;
+        }
+
+        List<Transaction> validTxs = new ArrayList<>();
+        this.scheduleTxs(graph, indices, graph.getInDegrees(), validTxs);
+        this.utxoPool.commit();
+        this.epochNanos.stop(start);
+
+        return validTxs.toArray(new Transaction[0]);
+    }
+
+    /**
+     * Same as {@link #handleTxsInDependencyOrder(Transaction[])}, but the independent components of
+     * the epoch's spend graph are validated in parallel on the fork-join pool.
+     * @param possibleTxs Proposed transactions
+     * @return Accepted transactions, grouped by component and in the order they were applied
+     */
+    public Transaction[] handleTxsInParallel(Transaction[] possibleTxs) {
+
+        long start = this.epochNanos.start();
+
+        SpendGraph graph = new SpendGraph(possibleTxs);
+        int[] pending = graph.getInDegrees();
+
+        List<ComponentTask> tasks = new ArrayList<>();
+        for (int[] component : graph.getComponents()) {
+            tasks.add(new ComponentTask(graph, component, pending));
+        }
+
+        this.forkJoinPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        // Components claim disjoint UTXOs, so their results can be applied one after the other
+        List<Transaction> validTxs = new ArrayList<>();
+        for (ComponentTask task : tasks) {
+
+            for (Transaction tx : task.validTxs) {
+
+                this.applyTx(tx);
+                validTxs.add(tx);
+            }
+        }
+        this.utxoPool.commit();
+        this.epochNanos.stop(start);
+
+        return validTxs.toArray(new Transaction[0]);
+    }
+
+    /**
+     * Worklist scheduler: walks {@code indices} in ascending order and processes a transaction
+     * once all its parents in the spend graph have been processed. A transaction that is still
+     * waiting for a parent is deferred and processed as soon as its last parent is.
+     * @param graph Spend graph of the epoch
+     * @param indices Ascending indices of the transactions to process
+     * @param pending Number of unprocessed parents per transaction, updated in place
+     * @param validTxs Receives the accepted transactions
+     */
+    private void scheduleTxs(SpendGraph graph, int[] indices, int[] pending, List<Transaction> validTxs) {
+
+        int[] ready = new int[indices.length];
+
+        for (int n : indices) {
+
+            if (pending[n] != 0) {
+                continue;
+            }
+
+            int numReady = 0;
+            ready[numReady++] = n;
+
+            while (numReady > 0) {
+
+                int m = ready[--numReady];
+                Transaction tx = graph.getTx(m);
+
+                if (this.isValidTx(tx)) {
+
+                    this.applyTx(tx);
+                    validTxs.add(tx);
+                }
+                pending[m] = -1;
+
+                for (int e = graph.firstChild(m); e < graph.lastChild(m); e++) {
+
+                    int child = graph.getChild(e);
+
+                    // Children behind the cursor have been deferred, the others are picked up by the cursor
+                    if (--pending[child] == 0 && child < n) {
+                        ready[numReady++] = child;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules the transactions of one component of the spend graph against a private pool
+     * holding only the UTXOs the component claims
+     */
+    private class ComponentTask extends RecursiveAction {
+
+        private final SpendGraph graph;
+        private final int[] component;
+        private final int[] pending;
+        private final List<Transaction> validTxs = new ArrayList<>();
+
+        ComponentTask(SpendGraph graph, int[] component, int[] pending) {
+
+            this.graph = graph;
+            this.component = component;
+            this.pending = pending;
+        }
+
+        @Override
+        protected void compute() {
 
-            if(this.isValidTx(tx)) {
+            UTXOPool componentPool = new UTXOPool();
+            for (int n : this.component) {
 
-                for (TransactionInput input: tx.getInputs()) {
+                for (TransactionInput input : this.graph.getTx(n).getInputs()) {
 
-                    // Claimed UTXO by input, remove from UTXO-pool
                     UTXO utxo = new UTXO(input.prevTxHash, input.outputIndex);
-                    utxoPool.removeUTXO(utxo);
+                    TransactionOutput output = utxoPool.getTxOutput(utxo);
+                    if (output != null) {
+                        componentPool.addUTXO(utxo, output);
+                    }
                 }
+            }
+            // The pool is private to this task, the handler may work on it without a copy
+            TxHandler componentHandler = onPool(componentPool, forkJoinPool);
+            componentHandler.setSignatureCache(signatureCache);
+            componentHandler.setCryptoEngine(cryptoEngine);
+            componentHandler.setMetrics(metrics);
+            componentHandler.scheduleTxs(this.graph, this.component, this.pending, this.validTxs);
+        }
+    }
+
+    /**
+     * Verify the signatures of all inputs of an epoch on the fork-join pool.
+     * An input is resolved against the current UTXO pool first and against the outputs created
+     * within the epoch second, which is the output the sequential path would see whenever the
+     * input can be valid at all. Inputs that cannot be resolved are marked as invalid.
+     * @param possibleTxs Proposed transactions
+     * @return {@code result[n][i]} is true iff the signature of the ith input of the nth transaction is valid
+     */
+    private boolean[][] verifySignatures(Transaction[] possibleTxs) {
+
+        // Hashes and serialized outputs are cached lazily by the transactions, hence compute them
+        // before going parallel
+        HashMap<UTXO, TransactionOutput> epochOutputs = new HashMap<>();
+        for (Transaction tx : possibleTxs) {
+
+            byte[] txHash = tx.getHash();
+            for (int outputIndex = 0; outputIndex < tx.numberOfOutputs(); outputIndex++) {
 
-                ArrayList<TransactionOutput> outputs =tx.getOutputs();
-                for (int outputIndex = 0;  outputIndex < outputs.size();  outputIndex++) {
+                epochOutputs.putIfAbsent(new UTXO(txHash, outputIndex), tx.getOutput(outputIndex));
+            }
+        }
+
+        boolean[][] verifiedSignatures = new boolean[possibleTxs.length][];
+        this.forkJoinPool.invoke(new SignatureTask(possibleTxs, epochOutputs, verifiedSignatures,
+                0, possibleTxs.length));
+
+        return verifiedSignatures;
+    }
+
+    /**
+     * Verifies the signatures of a range of transactions, splitting the range recursively
+     */
+    private class SignatureTask extends RecursiveAction {
 
-                    UTXO utxo = new UTXO(tx.getHash(), outputIndex);
-                    utxoPool.addUTXO(utxo, outputs.get(outputIndex));
+        private final Transaction[] possibleTxs;
+        private final HashMap<UTXO, TransactionOutput> epochOutputs;
+        private final boolean[][] verifiedSignatures;
+        private final int from;
+        private final int to;
+
+        SignatureTask(Transaction[] possibleTxs,
+                      HashMap<UTXO, TransactionOutput> epochOutputs,
+                      boolean[][] verifiedSignatures,
+                      int from,
+                      int to) {
+
+            this.possibleTxs = possibleTxs;
+            this.epochOutputs = epochOutputs;
+            this.verifiedSignatures = verifiedSignatures;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.to - this.from > SIGNATURE_BATCH_THRESHOLD) {
+
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new SignatureTask(possibleTxs, epochOutputs, verifiedSignatures, from, middle),
+                          new SignatureTask(possibleTxs, epochOutputs, verifiedSignatures, middle, to));
+                return;
+            }
+
+            UTXO.Probe probe = new UTXO.Probe();
+            TransactionOutput claimed = new TransactionOutput(0, null);
+            for (int n = this.from; n < this.to; n++) {
+
+                Transaction tx = this.possibleTxs[n];
+                boolean[] verified = new boolean[tx.numberOfInputs()];
+                this.verifiedSignatures[n] = verified;
+
+                // Rejected anyway, no need to verify any signature
+                if (!checkStructure(tx).isValid()) {
+                    continue;
+                }
+
+                for (int index = 0; index < verified.length; index++) {
+
+                    TransactionInput input = tx.getInput(index);
+                    UTXO utxo = probe.wrap(input.prevTxHash, input.outputIndex);
+
+                    TransactionOutput output = utxoPool.getTxOutput(utxo, claimed);
+                    if (output == null) {
+                        output = this.epochOutputs.get(utxo);
+                    }
+                    verified[index] = output != null && verifySignature(tx, index, output.address);
                 }
-                validTxs.add(tx);
             }
         }
-        return (Transaction[]) validTxs.toArray();
     }
-}
\ No newline at end of file
+}
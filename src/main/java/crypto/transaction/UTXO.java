@@ -18,6 +18,9 @@ public class UTXO implements Comparable<UTXO> {
     /** Index of the corresponding output in said transaction */
     private int index;
 
+    /** Hash code, computed once */
+    private int hash;
+
     /**
      * Creates a new UTXO corresponding to the output with index <index> in the transaction whose
      * hash is {@code txHash}
@@ -26,8 +29,17 @@ public class UTXO implements Comparable<UTXO> {
      */
     public UTXO(byte[] txHash, int index) {
 
-        this.txHash = Arrays.copyOf(txHash, txHash.length);
+        this.set(Arrays.copyOf(txHash, txHash.length), index);
+    }
+
+    private UTXO() {
+    }
+
+    private void set(byte[] txHash, int index) {
+
+        this.txHash = txHash;
         this.index = index;
+        this.hash = KeyHash.hashCode(txHash, index);
     }
 
     /** @return the transaction hash of this UTXO */
@@ -46,38 +58,28 @@ public class UTXO implements Comparable<UTXO> {
      */
     public boolean equals(Object obj) {
 
-        if (obj == null) {
-            return false;
+        if (this == obj) {
+            return true;
         }
 
-        if (getClass() != obj.getClass()) {
+        // Probes are equal to the UTXOs they point at
+        if (!(obj instanceof UTXO)) {
             return false;
         }
 
         UTXO other = (UTXO) obj;
 
-        if (other.txHash.length != this.txHash.length || other.index != this.index) {
-            return false;
-        }
-
-        for (int i = 0; i < other.txHash.length; i++) {
-            if (other.txHash[i] != txHash[i])
-                return false;
-        }
-        return true;
+        return other.hash == this.hash &&
+               other.index == this.index &&
+               Arrays.equals(other.txHash, this.txHash);
     }
 
     /**
-     * Simple implementation of a UTXO hashCode that respects equality of UTXOs // (i.e.
-     * utxo1.equals(utxo2) => utxo1.hashCode() == utxo2.hashCode())
+     * Keyed SipHash of all bytes of the transaction hash and the index, see {@link KeyHash}, respects
+     * equality of UTXOs (i.e. utxo1.equals(utxo2) => utxo1.hashCode() == utxo2.hashCode())
      */
     public int hashCode() {
 
-        int hash = 1;
-
-        hash = hash * 17 + index;
-        hash = hash * 31 + Arrays.hashCode(txHash);
-
         return hash;
     }
 
@@ -122,4 +124,25 @@ public class UTXO implements Comparable<UTXO> {
 
         return String.format("Tx:%s@%d", Base58.encode(this.txHash), this.index);
     }
+
+    /**
+     * Lookup key pointing at the transaction hash it is given instead of copying it, and which can be
+     * pointed at another outpoint for the next lookup, so that looking up a UTXO allocates nothing.
+     * A probe must only be passed to lookups and removals, never be stored in a pool or other
+     * collection, and is not thread-safe.
+     */
+    public static final class Probe extends UTXO {
+
+        /**
+         * Point the probe at an outpoint
+         * @param txHash Hash of the transaction, not copied
+         * @param index Index of the output in said transaction
+         * @return This probe
+         */
+        public Probe wrap(byte[] txHash, int index) {
+
+            super.set(txHash, index);
+            return this;
+        }
+    }
 }
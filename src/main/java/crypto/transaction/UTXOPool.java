@@ -1,21 +1,40 @@
 package crypto.transaction;
 
+import crypto.metrics.Counter;
+import crypto.metrics.Metrics;
+
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
-public class UTXOPool {
+/**
+ * Pool of unspent transaction outputs backed by a {@code HashMap}. Copying the pool
+ * copies the whole map, see {@link PersistentUTXOPool} for a backend with constant time copies.
+ */
+public class UTXOPool implements UTXOStore {
 
     /**
      * The current collection of UTXOs, with each one mapped to its corresponding transaction output
      */
     private HashMap<UTXO, TransactionOutput> H;
 
+    /** Number of lookups, additions and removals, shared with copies of the pool */
+    private Counter lookups;
+    private Counter additions;
+    private Counter removals;
+
+    /** Address -> UTXOs index, null unless enabled by {@link #indexAddresses()} */
+    private AddressIndex addressIndex;
+
     /**
      * Creates a new empty UTXOPool
      */
     public UTXOPool() {
 
         H = new HashMap<>();
+        this.setMetrics(Metrics.DISABLED);
     }
 
     /**
@@ -25,6 +44,68 @@ public class UTXOPool {
     public UTXOPool(UTXOPool other) {
 
         H = new HashMap<>(other.H);
+        this.lookups = other.lookups;
+        this.additions = other.additions;
+        this.removals = other.removals;
+        if (other.addressIndex != null) {
+            this.addressIndex = new AddressIndex(other.addressIndex);
+        }
+    }
+
+    /**
+     * Index the UTXOs by address, so that {@link #getUTXOs(PublicKey)} and {@link #getBalance(PublicKey)}
+     * take time proportional to the UTXOs of the address. The index is kept up to date by additions
+     * and removals and is copied along with the pool.
+     */
+    public void indexAddresses() {
+
+        if (this.addressIndex != null) {
+            return;
+        }
+        this.addressIndex = new AddressIndex();
+        for (Map.Entry<UTXO, TransactionOutput> entry : H.entrySet()) {
+            this.addressIndex.add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param address Public key
+     * @return Unmodifiable view of the UTXOs paying {@code address}
+     * @throws IllegalStateException If the pool does not index addresses
+     */
+    public Set<UTXO> getUTXOs(PublicKey address) {
+
+        return this.getAddressIndex().getUTXOs(address);
+    }
+
+    /**
+     * @param address Public key
+     * @return Total value in base units of the UTXOs paying {@code address}
+     * @throws IllegalStateException If the pool does not index addresses
+     */
+    public long getBalance(PublicKey address) {
+
+        return this.getAddressIndex().getBalance(address);
+    }
+
+    private AddressIndex getAddressIndex() {
+
+        if (this.addressIndex == null) {
+            throw new IllegalStateException("Addresses are not indexed, call indexAddresses() first");
+        }
+        return this.addressIndex;
+    }
+
+    /**
+     * Count lookups ({@code utxopool.lookups}), additions and removals in {@code metrics}.
+     * Copies made afterwards, e.g. by {@link TxHandler}, count in the same counters.
+     * @param metrics Metrics registry
+     */
+    public void setMetrics(Metrics metrics) {
+
+        this.lookups = metrics.counter("utxopool.lookups");
+        this.additions = metrics.counter("utxopool.additions");
+        this.removals = metrics.counter("utxopool.removals");
     }
 
     /**
@@ -32,42 +113,73 @@ public class UTXOPool {
      * @param utxo unspent transaction output
      * @param txOut transaction output
      */
+    @Override
     public void addUTXO(UTXO utxo, TransactionOutput txOut) {
 
-        H.put(utxo, txOut);
+        additions.increment();
+        TransactionOutput previous = H.put(utxo, txOut);
+        if (this.addressIndex != null) {
+
+            if (previous != null) {
+                this.addressIndex.remove(utxo, previous);
+            }
+            this.addressIndex.add(utxo, txOut);
+        }
     }
 
     /**
      * Removes the UTXO {@code utxo} from the pool
      * @param utxo UTXO
      */
+    @Override
     public void removeUTXO(UTXO utxo) {
 
-        H.remove(utxo);
+        removals.increment();
+        TransactionOutput previous = H.remove(utxo);
+        if (previous != null && this.addressIndex != null) {
+            this.addressIndex.remove(utxo, previous);
+        }
     }
 
     /**
      * @return the transaction output corresponding to UTXO {@code utxo}, or null if {@code utxo} is
      *         not in the pool.
      */
+    @Override
     public TransactionOutput getTxOutput(UTXO utxo) {
 
+        lookups.increment();
         return H.get(utxo);
     }
 
     /**
      * @return true if UTXO {@code utxo} is in the pool and false otherwise
      */
+    @Override
     public boolean contains(UTXO utxo) {
 
+        lookups.increment();
         return H.containsKey(utxo);
     }
 
     /**
      * Returns an {@code ArrayList} of all UTXOs in the pool
      */
+    @Override
     public ArrayList<UTXO> getAllUTXO() {
 
         return new ArrayList<>(H.keySet());
     }
+
+    @Override
+    public int size() {
+
+        return H.size();
+    }
+
+    @Override
+    public UTXOPool copy() {
+
+        return new UTXOPool(this);
+    }
 }
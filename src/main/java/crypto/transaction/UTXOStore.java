@@ -0,0 +1,70 @@
+package crypto.transaction;
+
+import java.util.ArrayList;
+
+/**
+ * Collection of unspent transaction outputs, each one mapped to its corresponding transaction output.
+ * Implemented by the different pool backends, so that {@link TxHandler} can work on either of them.
+ */
+public interface UTXOStore {
+
+    /**
+     * Adds a mapping from UTXO {@code utxo} to transaction output {@code txOut} to the pool
+     * @param utxo unspent transaction output
+     * @param txOut transaction output
+     */
+    void addUTXO(UTXO utxo, TransactionOutput txOut);
+
+    /**
+     * Removes the UTXO {@code utxo} from the pool
+     * @param utxo UTXO
+     */
+    void removeUTXO(UTXO utxo);
+
+    /**
+     * @return the transaction output corresponding to UTXO {@code utxo}, or null if {@code utxo} is
+     *         not in the pool.
+     */
+    TransactionOutput getTxOutput(UTXO utxo);
+
+    /**
+     * Same as {@link #getTxOutput(UTXO)}, but backends that do not hold output objects fill
+     * {@code target} instead of creating a new one, so that repeated lookups do not allocate
+     * @param utxo UTXO
+     * @param target Output owned by the caller, overwritten by such backends
+     * @return {@code target} or the output held by the pool, null if {@code utxo} is not in the pool.
+     *         Must not be modified and is only valid until {@code target} is passed again.
+     */
+    default TransactionOutput getTxOutput(UTXO utxo, TransactionOutput target) {
+
+        return this.getTxOutput(utxo);
+    }
+
+    /**
+     * @return true if UTXO {@code utxo} is in the pool and false otherwise
+     */
+    boolean contains(UTXO utxo);
+
+    /**
+     * Returns an {@code ArrayList} of all UTXOs in the pool
+     */
+    ArrayList<UTXO> getAllUTXO();
+
+    /**
+     * @return Number of UTXOs in the pool
+     */
+    int size();
+
+    /**
+     * Creates a copy of the pool that is not affected by later changes to this pool and vice versa
+     * @return Copy of the pool using the same backend
+     */
+    UTXOStore copy();
+
+    /**
+     * Makes the changes since the last commit durable. {@link TxHandler} commits once per epoch;
+     * pools held in memory only have nothing to do.
+     */
+    default void commit() {
+    }
+}
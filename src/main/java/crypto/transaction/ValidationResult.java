@@ -0,0 +1,85 @@
+package crypto.transaction;
+
+/**
+ * Outcome of validating a transaction: whether it is valid and, if not, the first check it failed
+ * and the input (or output) that failed it
+ */
+public final class ValidationResult {
+
+    /**
+     * Checks of {@link TxHandler#validateTx(Transaction)}. The checks not needing the UTXO pool run
+     * first: {@link #NEGATIVE_OUTPUT} and {@link #VALUE_OVERFLOW} of the outputs, then
+     * {@link #DUPLICATE_INPUT}. They are followed by {@link #MISSING_UTXO} and {@link #NEGATIVE_INPUT}
+     * input by input, {@link #VALUE_OVERFLOW} of the claimed UTXOs, {@link #INSUFFICIENT_INPUT} and
+     * {@link #INVALID_SIGNATURE}.
+     * The first failing check is reported.
+     */
+    public enum Reason {
+
+        /** All checks passed */
+        VALID,
+
+        /** An output value is negative, the index is the one of the output */
+        NEGATIVE_OUTPUT,
+
+        /** The output values, or the values of the claimed UTXOs, sum up to more than a long holds */
+        VALUE_OVERFLOW,
+
+        /** The input claims the same UTXO as an earlier input */
+        DUPLICATE_INPUT,
+
+        /** The UTXO claimed by the input is not in the pool */
+        MISSING_UTXO,
+
+        /** The UTXO claimed by the input has a negative value, only found in pools built with one */
+        NEGATIVE_INPUT,
+
+        /** The outputs sum up to more than the claimed UTXOs */
+        INSUFFICIENT_INPUT,
+
+        /** The signature of the input is invalid */
+        INVALID_SIGNATURE
+    }
+
+    public static final ValidationResult VALID = new ValidationResult(Reason.VALID, -1);
+
+    private final Reason reason;
+    private final int index;
+
+    private ValidationResult(Reason reason, int index) {
+
+        this.reason = reason;
+        this.index = index;
+    }
+
+    /**
+     * @param reason Failed check
+     * @param index Index of the failing input or output, -1 if the check concerns the whole transaction
+     * @return Result of an invalid transaction
+     */
+    public static ValidationResult invalid(Reason reason, int index) {
+
+        return new ValidationResult(reason, index);
+    }
+
+    /** @return True if the transaction passed all checks */
+    public boolean isValid() {
+        return this.reason == Reason.VALID;
+    }
+
+    /** @return Failed check, {@link Reason#VALID} if none failed */
+    public Reason getReason() {
+        return this.reason;
+    }
+
+    /** @return Index of the failing input (of the output for {@link Reason#NEGATIVE_OUTPUT}), -1 if there is none */
+    public int getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public String toString() {
+
+        return this.index < 0 ? this.reason.toString() : String.format("%s@%d", this.reason, this.index);
+    }
+}
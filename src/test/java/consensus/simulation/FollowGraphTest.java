@@ -0,0 +1,53 @@
+package consensus.simulation;
+
+import junit.framework.TestCase;
+
+import java.util.SplittableRandom;
+
+public class FollowGraphTest extends TestCase {
+
+    /**
+     * Follower lists are the transpose of the followee lists, without self loops
+     */
+    public void testRandomGraph() {
+
+        int numNodes = 300;
+        double pGraph = 0.1;
+        FollowGraph graph = FollowGraph.random(numNodes, pGraph, new SplittableRandom(42));
+
+        int numEdges = 0;
+        for (int i = 0; i < numNodes; i++) {
+
+            int[] followees = graph.getFollowees(i);
+            for (int n = 0; n < followees.length; n++) {
+
+                assertTrue(followees[n] != i);
+                assertTrue(n == 0 || followees[n - 1] < followees[n]);
+                assertTrue(graph.follows(i, followees[n]));
+            }
+            numEdges += followees.length;
+
+            for (int e = graph.firstFollower(i); e < graph.lastFollower(i); e++) {
+                assertTrue(graph.follows(graph.getFollower(e), i));
+            }
+        }
+        assertEquals(numEdges, graph.getNumEdges());
+
+        // Expected number of edges is p * N * (N - 1) = 8970, with a standard deviation of about 90
+        double expected = pGraph * numNodes * (numNodes - 1);
+        assertTrue(Math.abs(numEdges - expected) < 500);
+    }
+
+    /**
+     * Probabilities 0 and 1 give the empty and the complete graph
+     */
+    public void testBounds() {
+
+        assertEquals(0, FollowGraph.random(50, 0, new SplittableRandom(1)).getNumEdges());
+
+        FollowGraph complete = FollowGraph.random(50, 1, new SplittableRandom(1));
+        assertEquals(50 * 49, complete.getNumEdges());
+        assertFalse(complete.follows(3, 3));
+        assertTrue(complete.follows(3, 4));
+    }
+}
@@ -2,6 +2,11 @@ package consensus.simulation;
 
 import junit.framework.TestCase;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 public class SimulationTest extends TestCase {
 
 
@@ -16,27 +21,76 @@ public class SimulationTest extends TestCase {
         nodeSimulation.run();
         assertTrue(true);
 
-        // There are four required command line arguments: p_graph (.1, .2, .3),
-        // p_malicious (.15, .30, .45), p_txDistribution (.01, .05, .10),
-        // and numRounds (10, 20). You should try to test your CompliantNode
-        // code for all 3x3x3x2 = 54 combinations.
-        /*int numNodes = 100;
-        for (double pGraph: Arrays.asList(0.1, 0.2, 0.3)) {
-            for (double pMalicious : Arrays.asList(0.15, 0.30, 0.45)) {
-                for (double pTxDistribution : Arrays.asList(0.01, 0.05, 0.10)) {
-                    for (int numRounds : Arrays.asList(10, 20)) {
-
-                        Simulation nodeSimulation = new Simulation(numNodes,
-                                pGraph,
-                                pMalicious,
-                                pTxDistribution,
-                                numRounds);
-
-                        nodeSimulation.run();
-                    }
-                }
+        // You should try to test your CompliantNode code for all 3x3x3x2 = 54 combinations
+        // of p_graph (.1, .2, .3), p_malicious (.15, .30, .45), p_txDistribution (.01, .05, .10)
+        // and numRounds (10, 20), see SweepRunner.defaultSweep and testSweep
+    }
+
+    /**
+     * Parallel rounds give the same result as sequential rounds for the same seed, over several
+     * seeds and with the nodes split into many tasks
+     */
+    public void testParallelRoundsAreDeterministic() {
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        try {
+
+            for (long seed : new long[] {7, 8, 9}) {
+
+                // 80 nodes in ranges of at most 4 are run by 32 tasks
+                Simulation simulation = new Simulation(80, 0.2, 0.3, 0.05, 10, seed, forkJoinPool);
+                simulation.setNodeBatchThreshold(4);
+
+                SimulationResult sequential = simulation.simulate();
+                assertEquals(sequential, simulation.simulate());
+                assertEquals(sequential, simulation.simulateInParallel());
             }
 
-        }*/
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * A small sweep yields one aggregated row per grid point
+     * @throws Exception If anything goes wrong
+     */
+    public void testSweep() throws Exception {
+
+        SweepRunner sweep = new SweepRunner(30,
+                new double[] {0.1, 0.3},
+                new double[] {0.15},
+                new double[] {0.05, 0.10},
+                new int[] {10},
+                2,
+                42);
+
+        List<SweepRunner.Point> points = sweep.run(4);
+        assertEquals(4, points.size());
+        for (SweepRunner.Point point : points) {
+
+            assertEquals(2, point.getNumRuns());
+            assertTrue(point.getMinAgreementRate() > 0 && point.getMinAgreementRate() <= point.getAgreementRate());
+            assertTrue(point.getConvergenceRound() <= 10);
+        }
+
+        // Agreement and convergence depend on the seed only
+        List<SweepRunner.Point> again = sweep.run(2);
+        for (int p = 0; p < points.size(); p++) {
+            assertEquals(points.get(p).getAgreementRates(), again.get(p).getAgreementRates());
+        }
+
+        Path file = Files.createTempFile("sweep", ".csv");
+        try {
+
+            SweepRunner.write(points, file);
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(5, lines.size());
+            assertTrue(lines.get(0).startsWith("numNodes,pGraph,pMalicious,pTxDistribution,numRounds"));
+            assertTrue(SweepRunner.toJson(points).startsWith("[{\"numNodes\":30,\"pGraph\":0.1000,"));
+
+        } finally {
+            Files.delete(file);
+        }
     }
-}
\ No newline at end of file
+}
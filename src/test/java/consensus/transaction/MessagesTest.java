@@ -0,0 +1,61 @@
+package consensus.transaction;
+
+import consensus.nodes.Node;
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class MessagesTest extends TestCase {
+
+    /**
+     * Transaction ids and senders survive packing, including negative ids
+     */
+    public void testPack() {
+
+        for (int txId : new int[] {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 123456789}) {
+            for (int sender : new int[] {0, 1, 99999, Integer.MAX_VALUE}) {
+
+                long message = Messages.pack(txId, sender);
+                assertEquals(txId, Messages.getTxId(message));
+                assertEquals(sender, Messages.getSender(message));
+            }
+        }
+    }
+
+    /**
+     * Nodes implementing only the candidate set API receive packed messages as candidates
+     */
+    public void testCandidateAdapter() {
+
+        Set<Candidate> received = new HashSet<>();
+        Node node = new Node() {
+
+            @Override
+            public void setFollowees(boolean[] followees) {
+            }
+
+            @Override
+            public void setPendingTransaction(Set<Transaction> pendingTransactions) {
+            }
+
+            @Override
+            public Set<Transaction> sendToFollowers() {
+                return new HashSet<>();
+            }
+
+            @Override
+            public void receiveFromFollowees(Set<Candidate> candidates) {
+                received.addAll(candidates);
+            }
+        };
+
+        long[] messages = {Messages.pack(7, 1), Messages.pack(-3, 2), Messages.pack(7, 4)};
+        node.receiveFromFollowees(messages, 1, 3);
+
+        Set<Candidate> expected = new HashSet<>();
+        expected.add(new Candidate(new Transaction(-3), 2));
+        expected.add(new Candidate(new Transaction(7), 4));
+        assertEquals(expected, received);
+    }
+}
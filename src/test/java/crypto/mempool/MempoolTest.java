@@ -0,0 +1,240 @@
+package crypto.mempool;
+
+import crypto.shared.Crypto;
+import crypto.shared.Helper;
+import crypto.transaction.Transaction;
+import crypto.transaction.TxHandler;
+import crypto.transaction.UTXO;
+import crypto.transaction.UTXOPool;
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class MempoolTest extends TestCase {
+
+    /** Address space */
+    private List<KeyPair> addresses;
+
+    /** Transaction that pays an initial value to each address */
+    private Transaction genesisTx;
+
+    /** Handler holding the genesis outputs */
+    private TxHandler txHandler;
+
+    /**
+     * Set up unit test
+     * @throws Exception If anything goes wrong
+     */
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        this.addresses = Crypto.generateRandomKeyPairs(3);
+
+        this.genesisTx = new Transaction();
+        for (KeyPair address : this.addresses) {
+            this.genesisTx.addOutput(10, address.getPublic());
+        }
+
+        UTXOPool utxoPool = new UTXOPool();
+        for (int outputIndex = 0; outputIndex < this.genesisTx.numberOfOutputs(); outputIndex++) {
+            utxoPool.addUTXO(new UTXO(this.genesisTx.getHash(), outputIndex), this.genesisTx.getOutput(outputIndex));
+        }
+        this.txHandler = new TxHandler(utxoPool);
+    }
+
+    /**
+     * Build a transaction spending output {@code outputIndex} of {@code prevTx}
+     * @param sender Key pair owning the spent output
+     * @param prevTx Transaction whose output is spent
+     * @param outputIndex Index of the spent output
+     * @param recipient Public key of the recipient
+     * @return Signed transaction paying the full value to the recipient
+     */
+    private Transaction buildSignedTransaction(KeyPair sender, Transaction prevTx, int outputIndex, PublicKey recipient) {
+
+        return this.buildSignedTransaction(sender, prevTx, outputIndex, recipient, 0);
+    }
+
+    /**
+     * Build a transaction spending output {@code outputIndex} of {@code prevTx}
+     * @param sender Key pair owning the spent output
+     * @param prevTx Transaction whose output is spent
+     * @param outputIndex Index of the spent output
+     * @param recipient Public key of the recipient
+     * @param fee Part of the value that is not paid to the recipient
+     * @return Signed transaction
+     */
+    private Transaction buildSignedTransaction(KeyPair sender, Transaction prevTx, int outputIndex,
+                                               PublicKey recipient, long fee) {
+
+        Transaction tx = new Transaction();
+        tx.addInput(prevTx.getHash(), outputIndex);
+        tx.addOutput(prevTx.getOutput(outputIndex).value - fee, recipient);
+        byte[] message = Helper.convertToByteArray(tx.getInput(0).getRawDataWithoutSignature());
+        tx.addSignature(Crypto.sign(sender.getPrivate(), message), 0);
+        return tx;
+    }
+
+    /**
+     * Children arriving before their parents wait in the orphan pool and are admitted with them
+     */
+    public void testOrphansAreAdmittedWithTheirParents() {
+
+        KeyPair alice = this.addresses.get(0);
+        KeyPair bob = this.addresses.get(1);
+        KeyPair carol = this.addresses.get(2);
+
+        Transaction aliceToBob = this.buildSignedTransaction(alice, this.genesisTx, 0, bob.getPublic());
+        Transaction bobToCarol = this.buildSignedTransaction(bob, aliceToBob, 0, carol.getPublic());
+        Transaction carolToAlice = this.buildSignedTransaction(carol, bobToCarol, 0, alice.getPublic());
+        Transaction doubleSpend = this.buildSignedTransaction(alice, this.genesisTx, 0, carol.getPublic());
+
+        Mempool mempool = new Mempool(this.txHandler);
+
+        assertEquals(0, mempool.handleTxs(new Transaction[] {carolToAlice}).length);
+        assertEquals(0, mempool.handleTxs(new Transaction[] {bobToCarol}).length);
+        assertEquals(2, mempool.getNumOrphans());
+        assertTrue(mempool.isOrphan(carolToAlice.getHash()));
+
+        // The double spend loses against the parent of the chain and is not kept
+        Transaction[] accepted = mempool.handleTxs(new Transaction[] {aliceToBob, doubleSpend});
+        assertTrue(Arrays.equals(new Transaction[] {aliceToBob, bobToCarol, carolToAlice}, accepted));
+        assertEquals(0, mempool.getNumOrphans());
+        assertTrue(this.txHandler.utxoPool.contains(new UTXO(carolToAlice.getHash(), 0)));
+    }
+
+    /**
+     * The epoch is committed once and the orphans it releases once more, however many there are
+     */
+    public void testAdmittedOrphansAreCommittedOnce() {
+
+        KeyPair alice = this.addresses.get(0);
+        KeyPair bob = this.addresses.get(1);
+        KeyPair carol = this.addresses.get(2);
+
+        Transaction aliceToBob = this.buildSignedTransaction(alice, this.genesisTx, 0, bob.getPublic());
+        Transaction bobToCarol = this.buildSignedTransaction(bob, aliceToBob, 0, carol.getPublic());
+        Transaction carolToAlice = this.buildSignedTransaction(carol, bobToCarol, 0, alice.getPublic());
+
+        int[] commits = new int[1];
+        UTXOPool utxoPool = new UTXOPool((UTXOPool) this.txHandler.utxoPool) {
+            @Override
+            public void commit() {
+                commits[0]++;
+            }
+        };
+        Mempool mempool = new Mempool(TxHandler.onPool(utxoPool));
+
+        mempool.handleTxs(new Transaction[] {carolToAlice, bobToCarol});
+        commits[0] = 0;
+
+        assertEquals(3, mempool.handleTxs(new Transaction[] {aliceToBob}).length);
+        assertEquals(2, commits[0]);
+        assertTrue(utxoPool.contains(new UTXO(carolToAlice.getHash(), 0)));
+    }
+
+    /**
+     * Orphans are evicted when they are too old or too many
+     */
+    public void testEviction() {
+
+        KeyPair alice = this.addresses.get(0);
+        KeyPair bob = this.addresses.get(1);
+        KeyPair carol = this.addresses.get(2);
+
+        Transaction aliceToBob = this.buildSignedTransaction(alice, this.genesisTx, 0, bob.getPublic());
+        Transaction carolToBob = this.buildSignedTransaction(carol, this.genesisTx, 2, bob.getPublic());
+        Transaction bobToAlice = this.buildSignedTransaction(bob, aliceToBob, 0, alice.getPublic());
+        Transaction bobToCarol = this.buildSignedTransaction(bob, carolToBob, 0, carol.getPublic());
+
+        Mempool mempool = new Mempool(this.txHandler, 1, 2);
+
+        mempool.handleTxs(new Transaction[] {bobToAlice, bobToCarol});
+        assertEquals(1, mempool.getNumOrphans());
+        assertTrue(mempool.isOrphan(bobToCarol.getHash()));
+        assertEquals(1, mempool.getNumEvicted());
+
+        mempool.handleTxs(new Transaction[0]);
+        assertEquals(1, mempool.getNumOrphans());
+        mempool.handleTxs(new Transaction[0]);
+        assertEquals(0, mempool.getNumOrphans());
+        assertEquals(2, mempool.getNumEvicted());
+
+        // The parents arrive too late
+        assertEquals(2, mempool.handleTxs(new Transaction[] {aliceToBob, carolToBob}).length);
+    }
+
+    /**
+     * Conflicting orphans are kept or replaced according to the policy, orphans conflicting with an
+     * accepted transaction are dropped
+     */
+    public void testConflicts() {
+
+        KeyPair alice = this.addresses.get(0);
+        KeyPair bob = this.addresses.get(1);
+        KeyPair carol = this.addresses.get(2);
+
+        Transaction aliceToBob = this.buildSignedTransaction(alice, this.genesisTx, 0, bob.getPublic());
+        Transaction bobToAlice = this.buildSignedTransaction(bob, aliceToBob, 0, alice.getPublic());
+        Transaction bobToCarol = this.buildSignedTransaction(bob, aliceToBob, 0, carol.getPublic(), 1);
+        Transaction bobToBob = this.buildSignedTransaction(bob, aliceToBob, 0, bob.getPublic());
+
+        Mempool mempool = new Mempool(this.txHandler);
+
+        mempool.handleTxs(new Transaction[] {bobToAlice});
+        mempool.handleTxs(new Transaction[] {bobToCarol});
+        assertTrue(mempool.isOrphan(bobToAlice.getHash()));
+        assertFalse(mempool.isOrphan(bobToCarol.getHash()));
+        assertTrue(mempool.conflicts(bobToCarol));
+        assertEquals(1, mempool.getNumConflicts());
+
+        // Leaves a higher fee
+        mempool.setReplacementPolicy(ReplacementPolicy.HIGHER_FEE);
+        mempool.handleTxs(new Transaction[] {bobToCarol});
+        assertTrue(mempool.isOrphan(bobToCarol.getHash()));
+        assertFalse(mempool.isOrphan(bobToAlice.getHash()));
+        assertEquals(2, mempool.getNumConflicts());
+
+        // Negative outputs raise the fee, but such an orphan is never admitted
+        Transaction negative = this.buildSignedTransaction(bob, aliceToBob, 0, alice.getPublic(), 20);
+        mempool.handleTxs(new Transaction[] {negative});
+        assertFalse(mempool.isOrphan(negative.getHash()));
+        assertTrue(mempool.isOrphan(bobToCarol.getHash()));
+        assertEquals(2, mempool.getNumConflicts());
+
+        Transaction[] accepted = mempool.handleTxs(new Transaction[] {bobToBob, aliceToBob});
+        assertTrue(Arrays.equals(new Transaction[] {aliceToBob, bobToBob}, accepted));
+        assertEquals(0, mempool.getNumOrphans());
+        assertEquals(3, mempool.getNumConflicts());
+    }
+
+    /**
+     * Overflowing or negative outputs neither replace nor are replaced instead of failing the epoch
+     */
+    public void testHigherFeeIsTotal() {
+
+        PublicKey bob = this.addresses.get(1).getPublic();
+        Transaction pending = this.buildSignedTransaction(this.addresses.get(0), this.genesisTx, 0, bob);
+
+        Transaction overflow = new Transaction();
+        overflow.addInput(this.genesisTx.getHash(), 0);
+        overflow.addOutput(Long.MAX_VALUE, bob);
+        overflow.addOutput(Long.MAX_VALUE, bob);
+
+        Transaction negative = new Transaction();
+        negative.addInput(this.genesisTx.getHash(), 0);
+        negative.addOutput(-1, bob);
+
+        Transaction cheaper = this.buildSignedTransaction(this.addresses.get(0), this.genesisTx, 0, bob, 1);
+
+        assertFalse(ReplacementPolicy.HIGHER_FEE.shouldReplace(overflow, Collections.singletonList(pending)));
+        assertFalse(ReplacementPolicy.HIGHER_FEE.shouldReplace(negative, Collections.singletonList(pending)));
+        assertFalse(ReplacementPolicy.HIGHER_FEE.shouldReplace(cheaper, Collections.singletonList(overflow)));
+        assertTrue(ReplacementPolicy.HIGHER_FEE.shouldReplace(cheaper, Collections.singletonList(pending)));
+    }
+}
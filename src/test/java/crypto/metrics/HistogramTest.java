@@ -0,0 +1,57 @@
+package crypto.metrics;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class HistogramTest extends TestCase {
+
+    /**
+     * Each value lies within its bucket, and buckets are at most 1/16 of their values wide
+     */
+    public void testBuckets() {
+
+        Random random = new Random(42);
+        for (int n = 0; n < 100000; n++) {
+
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = Histogram.bucketIndex(value);
+
+            assertTrue(Histogram.lowestValue(index) <= value);
+            assertTrue(value <= Histogram.highestValue(index));
+            assertTrue(Histogram.highestValue(index) - Histogram.lowestValue(index) <= value / 16);
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Percentiles of uniformly distributed values
+     */
+    public void testPercentiles() {
+
+        Histogram histogram = new Metrics().histogram("latency");
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(5000.5, snapshot.getMean(), 1e-9);
+        assertEquals(5000, snapshot.getValueAtPercentile(50), 5000 / 16);
+        assertEquals(9900, snapshot.getValueAtPercentile(99), 9900 / 16);
+        assertEquals(10000, snapshot.getMax(), 10000 / 16);
+    }
+
+    /**
+     * Instruments of a disabled registry record nothing and are not registered
+     */
+    public void testDisabled() {
+
+        Metrics.DISABLED.counter("count").increment();
+        Metrics.DISABLED.histogram("latency").record(5);
+
+        assertEquals(0, Metrics.DISABLED.counter("count").get());
+        assertEquals(0, Metrics.DISABLED.histogram("latency").snapshot().getCount());
+        assertEquals("{\"counters\":{},\"histograms\":{}}", Metrics.DISABLED.snapshot().toJson());
+    }
+}
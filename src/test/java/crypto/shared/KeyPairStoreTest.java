@@ -0,0 +1,95 @@
+package crypto.shared;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
+
+public class KeyPairStoreTest extends TestCase {
+
+    /** Directory holding the store files */
+    private Path directory;
+
+    /**
+     * Set up unit test
+     * @throws Exception If anything goes wrong
+     */
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        this.directory = Files.createTempDirectory("keystore");
+    }
+
+    /**
+     * Remove the store files
+     * @throws Exception If anything goes wrong
+     */
+    protected void tearDown() throws Exception {
+
+        for (Path file : Files.newDirectoryStream(this.directory)) {
+            Files.delete(file);
+        }
+        Files.delete(this.directory);
+
+        super.tearDown();
+    }
+
+    /**
+     * The same seed generates the same addresses
+     */
+    public void testDeterministicGeneration() {
+
+        List<KeyPair> first = Crypto.generateDeterministicKeyPairs(150, SignatureScheme.DSA_1024, 42);
+        List<KeyPair> second = Crypto.generateDeterministicKeyPairs(150, SignatureScheme.DSA_1024, 42);
+
+        assertEquals(150, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getPublic(), second.get(i).getPublic());
+        }
+        assertFalse(first.get(0).getPublic().equals(first.get(1).getPublic()));
+    }
+
+    /**
+     * Random addresses do not depend on any seed of the caller
+     */
+    public void testRandomGeneration() {
+
+        List<KeyPair> first = Crypto.generateRandomKeyPairsInParallel(2, SignatureScheme.DSA_1024);
+        List<KeyPair> second = Crypto.generateRandomKeyPairsInParallel(2, SignatureScheme.DSA_1024);
+
+        assertEquals(2, first.size());
+        assertFalse(first.get(0).getPublic().equals(second.get(0).getPublic()));
+        assertFalse(first.get(0).getPublic().equals(first.get(1).getPublic()));
+    }
+
+    /**
+     * Key pairs read back from the store sign and verify like the original ones
+     */
+    public void testStoreRoundTrip() throws Exception {
+
+        Path file = this.directory.resolve("addresses.keys");
+        KeyPairStore store = KeyPairStore.openOrGenerate(file, 20, SignatureScheme.ECDSA_P256, 7);
+        assertEquals(20, store.size());
+
+        List<KeyPair> keyPairs = KeyPairStore.open(file).getKeyPairs(20);
+        byte[] message = "Hello crypto coin".getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < keyPairs.size(); i++) {
+
+            KeyPair keyPair = keyPairs.get(i);
+            assertEquals(store.get(i).getPublic(), keyPair.getPublic());
+            assertEquals(SignatureScheme.ECDSA_P256, store.getScheme(i));
+            assertTrue(Crypto.verifySignature(keyPair.getPublic(), message, Crypto.sign(keyPair.getPrivate(), message)));
+        }
+
+        // A store with fewer addresses than requested is regenerated
+        KeyPairStore larger = KeyPairStore.openOrGenerate(file, 30, SignatureScheme.ECDSA_P256, 7);
+        assertEquals(30, larger.size());
+        assertTrue(Arrays.equals(store.get(0).getPublic().getEncoded(), larger.get(0).getPublic().getEncoded()));
+    }
+}
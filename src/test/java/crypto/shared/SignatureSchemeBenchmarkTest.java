@@ -0,0 +1,86 @@
+package crypto.shared;
+
+import crypto.transaction.Transaction;
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.List;
+
+/**
+ * Compares the signature schemes: signatures and verifications per second, and the
+ * serialized size of keys, signatures and a transaction with one input and two outputs.
+ * Opt-in, it only runs with {@code -Dbenchmark=true}, {@code -Dbenchmark.operations} sets the number
+ * of operations per scheme:
+ * {@code mvn test -Dtest=SignatureSchemeBenchmarkTest -Dbenchmark=true}
+ */
+public class SignatureSchemeBenchmarkTest extends TestCase {
+
+    public void testBenchmark() {
+
+        if (!Boolean.getBoolean("benchmark")) {
+            return;
+        }
+        benchmark(Integer.getInteger("benchmark.operations", 2000));
+    }
+
+    /**
+     * Print one CSV line per scheme
+     * @param numOperations Number of signatures and verifications per scheme
+     */
+    private static void benchmark(int numOperations) {
+
+        CryptoEngine engine = new DefaultCryptoEngine();
+
+        System.out.println("scheme,signs/s,verifies/s,public key bytes,signature bytes,transaction bytes");
+
+        for (SignatureScheme scheme : SignatureScheme.values()) {
+
+            List<KeyPair> keyPairs = Crypto.generateRandomKeyPairs(2, scheme);
+            KeyPair sender = keyPairs.get(0);
+
+            byte[][] messages = new byte[numOperations][];
+            for (int i = 0; i < numOperations; i++) {
+                messages[i] = String.format("Message %d", i).getBytes(StandardCharsets.UTF_8);
+            }
+
+            // Warm up the providers and the JIT
+            for (int i = 0; i < Math.min(200, numOperations); i++) {
+                engine.verifySignature(sender.getPublic(), messages[i], engine.sign(sender.getPrivate(), messages[i]));
+            }
+
+            byte[][] signatures = new byte[numOperations][];
+            long start = System.nanoTime();
+            for (int i = 0; i < numOperations; i++) {
+                signatures[i] = engine.sign(sender.getPrivate(), messages[i]);
+            }
+            double signSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            for (int i = 0; i < numOperations; i++) {
+                assertTrue(String.format("Signature %d of %s does not verify", i, scheme),
+                        engine.verifySignature(sender.getPublic(), messages[i], signatures[i]));
+            }
+            double verifySeconds = (System.nanoTime() - start) / 1e9;
+
+            long signatureBytes = 0;
+            for (byte[] signature : signatures) {
+                signatureBytes += signature.length;
+            }
+
+            Transaction tx = new Transaction();
+            tx.addInput(Crypto.generateHash(messages[0]), 0);
+            tx.addOutput(100, keyPairs.get(1).getPublic());
+            tx.addOutput(200, sender.getPublic());
+            tx.addSignature(engine.sign(sender.getPrivate(), tx.getRawDataToSign(0)), 0);
+
+            System.out.println(String.format("%s,%.0f,%.0f,%d,%.1f,%d",
+                    scheme,
+                    numOperations / signSeconds,
+                    numOperations / verifySeconds,
+                    sender.getPublic().getEncoded().length,
+                    (double) signatureBytes / numOperations,
+                    tx.getRawDataSize()));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package crypto.transaction;
+
+import crypto.shared.Crypto;
+import crypto.shared.SignatureScheme;
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.List;
+
+public class AddressRegistryTest extends TestCase {
+
+    /**
+     * Equal addresses share one id and one encoding, whether interned as key or as encoding
+     * @throws Exception If anything goes wrong
+     */
+    public void testIntern() throws Exception {
+
+        SignatureScheme scheme = Crypto.getSignatureScheme();
+        List<KeyPair> keyPairs = Crypto.generateDeterministicKeyPairs(2, scheme, 1);
+        PublicKey first = keyPairs.get(0).getPublic();
+        PublicKey second = keyPairs.get(1).getPublic();
+
+        AddressRegistry registry = new AddressRegistry();
+        int firstId = registry.intern(first);
+        int secondId = registry.intern(second);
+
+        assertEquals(0, firstId);
+        assertEquals(1, secondId);
+        assertEquals(firstId, registry.intern(first));
+        assertEquals(secondId, registry.intern(scheme, second.getEncoded()));
+        assertEquals(2, registry.size());
+
+        assertSame(first, registry.getAddress(firstId));
+        assertSame(registry.getEncoded(firstId), registry.getEncoded(firstId));
+        assertTrue(Arrays.equals(first.getEncoded(), registry.getEncoded(firstId)));
+
+        assertEquals(AddressRegistry.NO_ADDRESS, registry.intern(null));
+        assertNull(registry.getAddress(AddressRegistry.NO_ADDRESS));
+        assertNull(registry.getEncoded(AddressRegistry.NO_ADDRESS));
+
+        // Outputs created by the registry share the interned key and encoding
+        TransactionOutput output = registry.newOutput(firstId, 1);
+        assertSame(first, output.address);
+        assertSame(registry.getEncoded(firstId), output.getEncodedAddress());
+        assertEquals(1, output.value);
+
+        // Outputs paying the same key point to one encoding instead of owning a copy each
+        assertSame(output.getEncodedAddress(), new TransactionOutput(2, first).getEncodedAddress());
+        assertSame(output.getEncodedAddress(), new TransactionOutput(3, first).getEncodedAddress());
+    }
+}
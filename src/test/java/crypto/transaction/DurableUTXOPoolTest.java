@@ -0,0 +1,150 @@
+package crypto.transaction;
+
+import crypto.shared.Crypto;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class DurableUTXOPoolTest extends TestCase {
+
+    /** Used for generating random values */
+    private final Random random = new Random(42);
+
+    /** Small checkpoint windows, so that each checkpoint spans several of them */
+    private static final int WINDOW_SIZE = 2 * DurableUTXOPool.MAX_RECORD_SIZE;
+
+    /** Directory of the pool */
+    private Path directory;
+
+    /**
+     * Set up unit test
+     * @throws Exception If anything goes wrong
+     */
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        this.directory = Files.createTempDirectory("utxo");
+    }
+
+    /**
+     * Remove the pool files
+     * @throws Exception If anything goes wrong
+     */
+    protected void tearDown() throws Exception {
+
+        for (Path file : Files.newDirectoryStream(this.directory)) {
+            Files.delete(file);
+        }
+        Files.delete(this.directory);
+
+        super.tearDown();
+    }
+
+    /**
+     * Check that both pools hold the same UTXOs with the same values and addresses
+     */
+    private static void assertSamePool(UTXOStore expected, UTXOStore actual) {
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new HashSet<>(expected.getAllUTXO()), new HashSet<>(actual.getAllUTXO()));
+        for (UTXO utxo : expected.getAllUTXO()) {
+
+            assertEquals(expected.getTxOutput(utxo).value, actual.getTxOutput(utxo).value);
+            assertEquals(expected.getTxOutput(utxo).getAddress(), actual.getTxOutput(utxo).getAddress());
+        }
+    }
+
+    /**
+     * Committed changes survive a restart, uncommitted ones and a torn batch at the end of the log are dropped
+     */
+    public void testRecovery() throws IOException {
+
+        List<KeyPair> keyPairs = Crypto.generateDeterministicKeyPairs(4, Crypto.getSignatureScheme(), 1);
+
+        UTXOPool expected = new UTXOPool();
+        List<UTXO> utxos = new ArrayList<>();
+
+        DurableUTXOPool pool = DurableUTXOPool.open(this.directory, 7, WINDOW_SIZE);
+        for (int epoch = 0; epoch < 20; epoch++) {
+
+            for (int n = 0; n < 100; n++) {
+
+                if (utxos.isEmpty() || this.random.nextInt(3) > 0) {
+
+                    UTXO utxo = TestUTXOs.generateRandomUTXO(this.random);
+                    TransactionOutput output = new TransactionOutput(n,
+                            n % 5 == 0 ? null : keyPairs.get(n % keyPairs.size()).getPublic());
+                    utxos.add(utxo);
+
+                    expected.addUTXO(utxo, output);
+                    pool.addUTXO(utxo, output);
+
+                } else {
+
+                    UTXO utxo = utxos.remove(this.random.nextInt(utxos.size()));
+                    expected.removeUTXO(utxo);
+                    pool.removeUTXO(utxo);
+                }
+            }
+            pool.commit();
+        }
+        assertEquals(20, pool.getSequence());
+
+        // Lost in the crash
+        pool.addUTXO(TestUTXOs.generateRandomUTXO(this.random), new TransactionOutput(1, null));
+        pool.close();
+
+        try (FileChannel log = FileChannel.open(this.directory.resolve("utxo.log"), StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[] {0x55, 0x54, 0x58, 0x42, 0, 0, 0}));
+        }
+
+        // Checkpoint interrupted before its rename
+        Path temporary = this.directory.resolve("checkpoint-99.dat.tmp");
+        Files.write(temporary, new byte[] {1, 2, 3});
+
+        DurableUTXOPool recovered = DurableUTXOPool.open(this.directory, 7, WINDOW_SIZE);
+        assertFalse(Files.exists(temporary));
+        assertEquals(20, recovered.getSequence());
+        assertSamePool(expected, recovered);
+
+        // The log is usable after dropping the torn batch
+        UTXO utxo = TestUTXOs.generateRandomUTXO(this.random);
+        TransactionOutput output = new TransactionOutput(3, null);
+        expected.addUTXO(utxo, output);
+        recovered.addUTXO(utxo, output);
+        recovered.commit();
+        recovered.close();
+
+        DurableUTXOPool reopened = DurableUTXOPool.open(this.directory, 7, WINDOW_SIZE);
+        assertEquals(21, reopened.getSequence());
+        assertSamePool(expected, reopened);
+
+        // After a failed commit every commit fails until the pool is reopened at the last committed state
+        reopened.addUTXO(TestUTXOs.generateRandomUTXO(this.random), new TransactionOutput(4, null));
+        reopened.close();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                reopened.commit();
+                fail("Commit to a closed log succeeded");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+
+        DurableUTXOPool afterFailure = DurableUTXOPool.open(this.directory, 7, WINDOW_SIZE);
+        assertEquals(21, afterFailure.getSequence());
+        assertSamePool(expected, afterFailure);
+        afterFailure.close();
+    }
+}
@@ -0,0 +1,139 @@
+package crypto.transaction;
+
+import crypto.shared.Crypto;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class EpochStoreTest extends TestCase {
+
+    /** Used for generating random values */
+    private final Random random = new Random(42);
+
+    /** Directory of the store */
+    private Path directory;
+
+    /** Addresses paid by the transactions */
+    private List<KeyPair> keyPairs;
+
+    /**
+     * Set up unit test
+     * @throws Exception If anything goes wrong
+     */
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        this.directory = Files.createTempDirectory("epochs");
+        this.keyPairs = Crypto.generateDeterministicKeyPairs(3, Crypto.getSignatureScheme(), 1);
+    }
+
+    /**
+     * Remove the segment files
+     * @throws Exception If anything goes wrong
+     */
+    protected void tearDown() throws Exception {
+
+        for (Path file : Files.newDirectoryStream(this.directory)) {
+            Files.delete(file);
+        }
+        Files.delete(this.directory);
+
+        super.tearDown();
+    }
+
+    /**
+     * Generate a transaction with random inputs and signatures
+     * @return Transaction
+     */
+    private Transaction generateRandomTransaction() {
+
+        Transaction tx = new Transaction();
+        for (int i = 0; i < 1 + this.random.nextInt(3); i++) {
+
+            byte[] prevTxHash = new byte[32];
+            byte[] signature = new byte[46];
+            this.random.nextBytes(prevTxHash);
+            this.random.nextBytes(signature);
+
+            tx.addInput(prevTxHash, this.random.nextInt(4));
+            tx.addSignature(signature, i);
+        }
+        for (int i = 0; i < 1 + this.random.nextInt(3); i++) {
+            tx.addOutput(this.random.nextInt(100), this.keyPairs.get(i).getPublic());
+        }
+        return tx;
+    }
+
+    /**
+     * Transactions are found by their hash and replayed in order, also after reopening the store
+     */
+    public void testAppendLookupAndReplay() throws IOException {
+
+        List<Transaction> txs = new ArrayList<>();
+        List<Long> epochs = new ArrayList<>();
+
+        EpochStore store = EpochStore.open(this.directory, 4096);
+        for (int epoch = 0; epoch < 30; epoch++) {
+
+            Transaction[] accepted = new Transaction[1 + this.random.nextInt(5)];
+            for (int n = 0; n < accepted.length; n++) {
+
+                accepted[n] = this.generateRandomTransaction();
+                txs.add(accepted[n]);
+                epochs.add((long) epoch);
+            }
+            assertEquals(epoch, store.append(accepted));
+
+            // The active segment is remapped after appending
+            assertTrue(Arrays.equals(accepted[0].getRawData(), store.getTransaction(accepted[0].getHash()).getRawData()));
+        }
+        store.close();
+        assertTrue(Files.exists(this.directory.resolve("segment-000001.dat")));
+
+        // Torn record at the end of the last segment
+        Path lastSegment;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            lastSegment = files.max(Path::compareTo).get();
+        }
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 1, 0, 7}));
+        }
+
+        EpochStore reopened = EpochStore.open(this.directory, 4096);
+        assertEquals(txs.size(), reopened.size());
+        assertEquals(30, reopened.getNumEpochs());
+
+        for (Transaction tx : txs) {
+
+            Transaction stored = reopened.getTransaction(tx.getHash());
+            assertTrue(Arrays.equals(tx.getHash(), stored.getHash()));
+            assertEquals(tx.getOutput(0).getAddress(), stored.getOutput(0).getAddress());
+        }
+        assertNull(reopened.getRecord(new byte[32]));
+
+        List<Long> replayed = new ArrayList<>();
+        reopened.replay((epoch, record) -> {
+
+            assertTrue(record.isReadOnly());
+            assertTrue(Arrays.equals(txs.get(replayed.size()).getHash(), reopened.decode(record).getHash()));
+            replayed.add(epoch);
+        });
+        assertEquals(epochs, replayed);
+
+        reopened.append(new Transaction[] {this.generateRandomTransaction()});
+        assertEquals(31, reopened.getNumEpochs());
+        reopened.close();
+    }
+}
@@ -0,0 +1,63 @@
+package crypto.transaction;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class OffHeapUTXOPoolTest extends TestCase {
+
+    /** Used for generating random values */
+    private final Random random = new Random(42);
+
+    /**
+     * Apply the same random additions and removals to both backends and compare them,
+     * the pool starts small to exercise resizing
+     */
+    public void testMatchesHashMapPool() {
+
+        UTXOPool expected = new UTXOPool();
+        OffHeapUTXOPool pool = new OffHeapUTXOPool();
+        List<UTXO> utxos = new ArrayList<>();
+
+        for (int n = 0; n < 100000; n++) {
+
+            if (utxos.isEmpty() || this.random.nextInt(3) > 0) {
+
+                UTXO utxo = TestUTXOs.generateRandomUTXO(this.random);
+                TransactionOutput output = new TransactionOutput(n, null);
+                utxos.add(utxo);
+
+                expected.addUTXO(utxo, output);
+                pool.addUTXO(utxo, output);
+
+            } else {
+
+                UTXO utxo = utxos.remove(this.random.nextInt(utxos.size()));
+                expected.removeUTXO(utxo);
+                pool.removeUTXO(utxo);
+                assertFalse(pool.contains(utxo));
+            }
+        }
+
+        assertEquals(expected.size(), pool.size());
+        assertEquals(new HashSet<>(expected.getAllUTXO()), new HashSet<>(pool.getAllUTXO()));
+        TransactionOutput target = new TransactionOutput(0, null);
+        for (UTXO utxo : expected.getAllUTXO()) {
+
+            assertEquals(expected.getTxOutput(utxo).value, pool.getValue(utxo));
+            assertSame(target, pool.getTxOutput(utxo, target));
+            assertEquals(expected.getTxOutput(utxo).value, target.value);
+        }
+        assertNull(pool.getTxOutput(TestUTXOs.generateRandomUTXO(this.random), target));
+
+        OffHeapUTXOPool copy = pool.copy();
+        for (UTXO utxo : utxos) {
+            copy.removeUTXO(utxo);
+        }
+        assertEquals(0, copy.size());
+        assertEquals(expected.size(), pool.size());
+    }
+}
@@ -0,0 +1,72 @@
+package crypto.transaction;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class PersistentUTXOPoolTest extends TestCase {
+
+    /** Used for generating random values */
+    private final Random random = new Random(42);
+
+    /**
+     * Apply the same random additions and removals to both backends and compare them
+     */
+    public void testMatchesHashMapPool() {
+
+        UTXOPool expected = new UTXOPool();
+        PersistentUTXOPool pool = new PersistentUTXOPool();
+        List<UTXO> utxos = new ArrayList<>();
+
+        for (int n = 0; n < 20000; n++) {
+
+            if (utxos.isEmpty() || this.random.nextInt(3) > 0) {
+
+                UTXO utxo = TestUTXOs.generateRandomUTXO(this.random);
+                TransactionOutput output = new TransactionOutput(n, null);
+                utxos.add(utxo);
+
+                expected.addUTXO(utxo, output);
+                pool.addUTXO(utxo, output);
+
+            } else {
+
+                UTXO utxo = utxos.remove(this.random.nextInt(utxos.size()));
+                expected.removeUTXO(utxo);
+                pool.removeUTXO(utxo);
+            }
+        }
+
+        assertEquals(expected.size(), pool.size());
+        assertEquals(new HashSet<>(expected.getAllUTXO()), new HashSet<>(pool.getAllUTXO()));
+        for (UTXO utxo : expected.getAllUTXO()) {
+            assertSame(expected.getTxOutput(utxo), pool.getTxOutput(utxo));
+        }
+    }
+
+    /**
+     * Changes to a copy must not be visible in the original and vice versa
+     */
+    public void testCopyIsIndependent() {
+
+        PersistentUTXOPool pool = new PersistentUTXOPool();
+        UTXO first = TestUTXOs.generateRandomUTXO(this.random);
+        UTXO second = TestUTXOs.generateRandomUTXO(this.random);
+        pool.addUTXO(first, new TransactionOutput(1, null));
+
+        PersistentUTXOPool snapshot = pool.snapshot();
+        pool.addUTXO(second, new TransactionOutput(2, null));
+        snapshot.removeUTXO(first);
+
+        assertTrue(pool.contains(first));
+        assertTrue(pool.contains(second));
+        assertEquals(2, pool.size());
+
+        assertFalse(snapshot.contains(first));
+        assertFalse(snapshot.contains(second));
+        assertEquals(0, snapshot.size());
+    }
+}
@@ -0,0 +1,24 @@
+package crypto.transaction;
+
+import java.util.Random;
+
+/**
+ * Fixtures shared by the pool tests
+ */
+final class TestUTXOs {
+
+    private TestUTXOs() {
+    }
+
+    /**
+     * Generate a UTXO with a random 32 byte hash
+     * @param random Source of the hash and index
+     * @return UTXO
+     */
+    static UTXO generateRandomUTXO(Random random) {
+
+        byte[] txHash = new byte[32];
+        random.nextBytes(txHash);
+        return new UTXO(txHash, random.nextInt(4));
+    }
+}
@@ -0,0 +1,116 @@
+package crypto.transaction;
+
+import crypto.shared.Crypto;
+import crypto.shared.Helper;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransactionTest extends TestCase {
+
+    /** Address space */
+    private List<KeyPair> addresses;
+
+    /**
+     * Set up unit test
+     * @throws Exception If anything goes wrong
+     */
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        this.addresses = Crypto.generateRandomKeyPairs(2);
+    }
+
+    /**
+     * Build a signed transaction with two inputs and two outputs
+     * @return Transaction
+     */
+    private Transaction buildTransaction() {
+
+        byte[] prevTxHash = Crypto.generateHash(new byte[] {1, 2, 3});
+
+        Transaction tx = new Transaction();
+        tx.addInput(prevTxHash, 0);
+        tx.addInput(prevTxHash, 1);
+        tx.addOutput(Amount.fromCoins(12.5), this.addresses.get(0).getPublic());
+        tx.addOutput(Amount.fromCoins(0.75), this.addresses.get(1).getPublic());
+
+        for (int index = 0; index < tx.numberOfInputs(); index++) {
+            tx.addSignature(Crypto.sign(this.addresses.get(index).getPrivate(), tx.getRawDataToSign(index)), index);
+        }
+        return tx;
+    }
+
+    /**
+     * The serialization layout: inputs (previous hash, output index, signature), then outputs (value, address)
+     */
+    public void testRawDataLayout() throws IOException {
+
+        Transaction tx = this.buildTransaction();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream expected = new DataOutputStream(bytes);
+        for (TransactionInput input : tx.getInputs()) {
+            expected.write(input.prevTxHash);
+            expected.writeInt(input.outputIndex);
+            expected.write(input.signature);
+        }
+        for (TransactionOutput output : tx.getOutputs()) {
+            expected.writeLong(output.value);
+            expected.write(output.getEncodedAddress());
+        }
+
+        assertTrue(Arrays.equals(bytes.toByteArray(), tx.getRawData()));
+        assertEquals(bytes.size(), tx.getRawDataSize());
+    }
+
+    /**
+     * The list based adapters return the same bytes as the buffer based serialization
+     */
+    public void testListAdapters() {
+
+        Transaction tx = this.buildTransaction();
+
+        for (int index = 0; index < tx.numberOfInputs(); index++) {
+
+            byte[] expected = tx.getRawDataToSign(index);
+
+            byte[] input = Helper.convertToByteArray(tx.getInput(index).getRawDataWithoutSignature());
+            assertTrue(Arrays.equals(input, Arrays.copyOf(expected, input.length)));
+
+            int offset = input.length;
+            for (TransactionOutput output : tx.getOutputs()) {
+
+                byte[] outputData = Helper.convertToByteArray(output.getRawData());
+                assertTrue(Arrays.equals(outputData, Arrays.copyOfRange(expected, offset, offset + outputData.length)));
+                offset += outputData.length;
+            }
+            assertEquals(expected.length, offset);
+        }
+    }
+
+    /**
+     * The streamed hash equals the hash of the raw data and is reset by modifications
+     */
+    public void testHashInvalidation() {
+
+        Transaction tx = this.buildTransaction();
+        byte[] hash = tx.getHash();
+        assertTrue(Arrays.equals(Crypto.generateHash(tx.getRawData()), hash));
+
+        tx.addSignature(new byte[] {42}, 0);
+        assertFalse(Arrays.equals(hash, tx.getHash()));
+        assertTrue(Arrays.equals(Crypto.generateHash(tx.getRawData()), tx.getHash()));
+
+        byte[] dataToSign = tx.getRawDataToSign(1);
+        tx.addOutput(1, this.addresses.get(0).getPublic());
+        assertEquals(dataToSign.length + tx.getOutput(2).getRawDataSize(), tx.getRawDataToSign(1).length);
+        assertTrue(Arrays.equals(Crypto.generateHash(tx.getRawData()), tx.getHash()));
+    }
+}
@@ -1,7 +1,12 @@
 package crypto.transaction;
 
+import crypto.metrics.Metrics;
+import crypto.metrics.MetricsSnapshot;
 import crypto.shared.Crypto;
+import crypto.shared.CryptoEngine;
 import crypto.shared.Helper;
+import crypto.shared.ParallelCryptoEngine;
+import crypto.shared.SignatureScheme;
 import junit.framework.TestCase;
 import org.apache.log4j.Logger;
 
@@ -10,6 +15,8 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 
@@ -30,6 +37,12 @@ public class TxHandlerTest extends TestCase {
     /** Address space */
     private List<KeyPair> addresses;
 
+    /** Pool the transaction handler was created from */
+    private UTXOPool utxoPool;
+
+    /** Transaction that pays an initial value to each address */
+    private Transaction genesisTx;
+
     /**
      * Generates a random valid transaction
      * @param address Public key of the person generating the random transaction
@@ -51,12 +64,79 @@ public class TxHandlerTest extends TestCase {
     }
 
     /**
-     * Generate a random positive value between 0 and 1,000,000
-     * @return Positive value
+     * Build a transaction spending the given outputs and paying {@code value} to {@code recipient}
+     * @param sender Key pair owning all spent outputs
+     * @param prevTx Transaction whose outputs are spent
+     * @param outputIndices Indices of the spent outputs
+     * @param value Value paid to the recipient
+     * @param recipient Public key of the recipient
+     * @return Signed transaction
      */
-    private double generateRandomPositiveValue() {
+    private Transaction buildSignedTransaction(KeyPair sender,
+                                               Transaction prevTx,
+                                               int[] outputIndices,
+                                               long value,
+                                               PublicKey recipient) {
+
+        Transaction tx = new Transaction();
+        for (int outputIndex : outputIndices) {
+            tx.addInput(prevTx.getHash(), outputIndex);
+        }
+        tx.addOutput(value, recipient);
 
-        return 1e6 *  this.random.nextDouble();
+        for (int index = 0; index < tx.numberOfInputs(); index++) {
+
+            byte[] message = Helper.convertToByteArray(tx.getInput(index).getRawDataWithoutSignature());
+            tx.addSignature(Crypto.sign(sender.getPrivate(), message), index);
+        }
+        return tx;
+    }
+
+    /**
+     * Build an epoch with valid spends, a chain within the epoch, a double spend,
+     * a forged signature and an overspend
+     * @return Proposed transactions
+     */
+    private Transaction[] buildEpoch() {
+
+        KeyPair alice = this.addresses.get(0);
+        KeyPair bob = this.addresses.get(1);
+        KeyPair carol = this.addresses.get(2);
+
+        Transaction aliceToBob = this.buildSignedTransaction(alice, this.genesisTx, new int[] {0},
+                this.genesisTx.getOutput(0).value, bob.getPublic());
+
+        Transaction bobToCarol = this.buildSignedTransaction(bob, aliceToBob, new int[] {0},
+                aliceToBob.getOutput(0).value / 2, carol.getPublic());
+
+        Transaction doubleSpend = this.buildSignedTransaction(alice, this.genesisTx, new int[] {0},
+                1, carol.getPublic());
+
+        Transaction forged = this.buildSignedTransaction(carol, this.genesisTx, new int[] {3},
+                1, carol.getPublic());
+
+        Transaction overspend = this.buildSignedTransaction(carol, this.genesisTx, new int[] {2},
+                this.genesisTx.getOutput(2).value + 1, bob.getPublic());
+
+        Transaction bobSpendsTwice = this.buildSignedTransaction(bob, this.genesisTx, new int[] {1, 1},
+                1, alice.getPublic());
+
+        // Spends an output that is only created later in the epoch
+        Transaction carolToAlice = this.buildSignedTransaction(carol, bobToCarol, new int[] {0},
+                1, alice.getPublic());
+
+        return new Transaction[] {
+                carolToAlice, aliceToBob, doubleSpend, bobToCarol, forged, overspend, bobSpendsTwice
+        };
+    }
+
+    /**
+     * Generate a random positive value between 0 and 1,000,000 coins
+     * @return Positive value in base units
+     */
+    private long generateRandomPositiveValue() {
+
+        return Amount.fromCoins(1e6 * this.random.nextDouble());
     }
 
     /**
@@ -69,9 +149,9 @@ public class TxHandlerTest extends TestCase {
 
         this.addresses = Crypto.generateRandomKeyPairs(10);
 
-        UTXOPool utxoPool = new UTXOPool();
+        this.utxoPool = new UTXOPool();
 
-        Transaction genesisTx = new Transaction();
+        this.genesisTx = new Transaction();
         for (KeyPair address : addresses) {
             genesisTx.addOutput(this.generateRandomPositiveValue(), address.getPublic());
         }
@@ -79,9 +159,9 @@ public class TxHandlerTest extends TestCase {
         byte[] txHash = genesisTx.getHash();
         for (int outputIndex=0; outputIndex < genesisTx.numberOfOutputs(); outputIndex++) {
 
-            utxoPool.addUTXO(new UTXO(txHash, outputIndex), genesisTx.getOutput(outputIndex));
+            this.utxoPool.addUTXO(new UTXO(txHash, outputIndex), genesisTx.getOutput(outputIndex));
         }
-        this.txHandler = new TxHandler(utxoPool);
+        this.txHandler = new TxHandler(this.utxoPool);
     }
 
     /**
@@ -100,14 +180,205 @@ public class TxHandlerTest extends TestCase {
 
     }
 
+    /**
+     * Test batch signing and verification across threads
+     */
+    public void testParallelCryptoEngine() {
+
+        CryptoEngine engine = new ParallelCryptoEngine();
+
+        int numMessages = 64;
+        PrivateKey[] privateKeys = new PrivateKey[numMessages];
+        PublicKey[] publicKeys = new PublicKey[numMessages];
+        byte[][] messages = new byte[numMessages][];
+        for (int i = 0; i < numMessages; i++) {
+
+            KeyPair address = this.addresses.get(i % this.addresses.size());
+            privateKeys[i] = address.getPrivate();
+            publicKeys[i] = address.getPublic();
+            messages[i] = String.format("Message %d", i).getBytes(StandardCharsets.UTF_8);
+        }
+
+        byte[][] signatures = engine.signAll(privateKeys, messages);
+        // Verify against the key of the next message, which is wrong for every message
+        PublicKey[] wrongKeys = new PublicKey[numMessages];
+        for (int i = 0; i < numMessages; i++) {
+            wrongKeys[i] = publicKeys[(i + 1) % numMessages];
+        }
+
+        boolean[] valid = engine.verifyAll(publicKeys, messages, signatures);
+        boolean[] invalid = engine.verifyAll(wrongKeys, messages, signatures);
+        byte[][] hashes = engine.hashAll(messages);
+
+        for (int i = 0; i < numMessages; i++) {
+            assertTrue(valid[i]);
+            assertFalse(invalid[i]);
+            assertTrue(Arrays.equals(Crypto.generateHash(messages[i]), hashes[i]));
+        }
+    }
+
+    /**
+     * Addresses of different signature schemes can pay each other
+     */
+    public void testEcdsaAddresses() {
+
+        List<KeyPair> ecdsaAddresses = Crypto.generateRandomKeyPairs(2, SignatureScheme.ECDSA_P256);
+        KeyPair alice = this.addresses.get(0);
+        KeyPair bob = ecdsaAddresses.get(0);
+        KeyPair carol = ecdsaAddresses.get(1);
+
+        Transaction aliceToBob = this.buildSignedTransaction(alice, this.genesisTx, new int[] {0},
+                this.genesisTx.getOutput(0).value, bob.getPublic());
+        Transaction bobToCarol = this.buildSignedTransaction(bob, aliceToBob, new int[] {0},
+                1, carol.getPublic());
+        Transaction forged = this.buildSignedTransaction(carol, this.genesisTx, new int[] {1},
+                1, carol.getPublic());
+
+        Transaction[] accepted = this.txHandler.handleTxs(new Transaction[] {aliceToBob, bobToCarol, forged});
+
+        assertEquals(2, accepted.length);
+        assertEquals(SignatureScheme.ECDSA_P256, SignatureScheme.of(accepted[1].getOutput(0).getAddress()));
+    }
+
     public void testIsValidTx() {
 
         assertTrue(true);
     }
 
+    /**
+     * Test validation counters and latency histograms
+     */
+    public void testMetrics() {
+
+        Metrics metrics = new Metrics();
+        this.txHandler.setMetrics(metrics);
+        this.txHandler.handleTxs(this.buildEpoch());
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getCounter("txhandler.validated.valid"));
+        assertEquals(2, snapshot.getCounter("txhandler.validated.missing_utxo"));
+        assertEquals(1, snapshot.getCounter("txhandler.validated.invalid_signature"));
+        assertEquals(1, snapshot.getCounter("txhandler.validated.insufficient_input"));
+        assertEquals(1, snapshot.getCounter("txhandler.validated.duplicate_input"));
+        assertEquals(3, snapshot.getHistograms().get("txhandler.signature.nanos").getCount());
+        assertEquals(1, snapshot.getHistograms().get("txhandler.epoch.nanos").getCount());
+        assertTrue(snapshot.toJson().startsWith("{\"counters\":{\"txhandler.validated.duplicate_input\":1,"));
+    }
+
+    /**
+     * Test rejection reasons, the cheap checks are reported before invalid signatures
+     */
+    public void testValidateTx() {
+
+        Transaction[] epoch = this.buildEpoch();
+
+        assertEquals(ValidationResult.VALID, this.txHandler.validateTx(epoch[1]));
+        assertEquals(ValidationResult.Reason.MISSING_UTXO, this.txHandler.validateTx(epoch[0]).getReason());
+        assertEquals(0, this.txHandler.validateTx(epoch[0]).getIndex());
+        assertEquals(ValidationResult.Reason.INVALID_SIGNATURE, this.txHandler.validateTx(epoch[4]).getReason());
+        assertEquals(ValidationResult.Reason.INSUFFICIENT_INPUT, this.txHandler.validateTx(epoch[5]).getReason());
+        assertEquals(ValidationResult.Reason.DUPLICATE_INPUT, this.txHandler.validateTx(epoch[6]).getReason());
+        assertEquals(1, this.txHandler.validateTx(epoch[6]).getIndex());
+
+        // Forged and negative: the negative output is found without verifying the signature
+        Transaction negative = new Transaction(epoch[4]);
+        negative.addOutput(-1, this.addresses.get(0).getPublic());
+        assertEquals(ValidationResult.Reason.NEGATIVE_OUTPUT, this.txHandler.validateTx(negative).getReason());
+        assertEquals(1, this.txHandler.validateTx(negative).getIndex());
+        assertFalse(this.txHandler.isValidTx(negative));
+
+        Transaction overflow = new Transaction(epoch[1]);
+        overflow.addOutput(Long.MAX_VALUE, this.addresses.get(0).getPublic());
+        assertEquals(ValidationResult.Reason.VALUE_OVERFLOW, this.txHandler.validateTx(overflow).getReason());
+
+        // A negative value in a caller-built pool is reported as such, not as an overflow
+        UTXOPool negativePool = new UTXOPool();
+        negativePool.addUTXO(new UTXO(this.genesisTx.getHash(), 0),
+                new TransactionOutput(-5, this.addresses.get(0).getPublic()));
+        negativePool.addUTXO(new UTXO(this.genesisTx.getHash(), 1), this.genesisTx.getOutput(1));
+        Transaction spendNegative = this.buildSignedTransaction(this.addresses.get(0), this.genesisTx,
+                new int[] {1, 0}, 0, this.addresses.get(1).getPublic());
+        ValidationResult result = new TxHandler(negativePool).validateTx(spendNegative);
+        assertEquals(ValidationResult.Reason.NEGATIVE_INPUT, result.getReason());
+        assertEquals(1, result.getIndex());
+    }
+
 
     public void testHandleTxs() {
 
-        assertTrue(true);
+        Transaction[] epoch = this.buildEpoch();
+        Transaction[] accepted = this.txHandler.handleTxs(epoch);
+
+        // aliceToBob and bobToCarol
+        assertEquals(2, accepted.length);
+        assertSame(epoch[1], accepted[0]);
+        assertSame(epoch[3], accepted[1]);
+    }
+
+    public void testHandleTxsInDependencyOrder() {
+
+        Transaction[] epoch = this.buildEpoch();
+        Transaction[] accepted = this.txHandler.handleTxsInDependencyOrder(epoch);
+
+        // carolToAlice is deferred until bobToCarol has been accepted
+        assertEquals(3, accepted.length);
+        assertSame(epoch[1], accepted[0]);
+        assertSame(epoch[3], accepted[1]);
+        assertSame(epoch[0], accepted[2]);
+    }
+
+    public void testHandleTxsInParallel() {
+
+        Transaction[] epoch = this.buildEpoch();
+
+        Transaction[] expected = new TxHandler(this.utxoPool).handleTxsInDependencyOrder(epoch);
+        Transaction[] accepted = this.txHandler.handleTxsInParallel(epoch);
+
+        assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(Arrays.asList(accepted)));
+        assertEquals(10, this.txHandler.utxoPool.getAllUTXO().size());
+    }
+
+    public void testHandleTxsWithPersistentPool() {
+
+        Transaction[] epoch = this.buildEpoch();
+
+        Transaction[] expected = this.txHandler.handleTxs(epoch);
+        TxHandler handler = new TxHandler(new PersistentUTXOPool(this.utxoPool));
+        Transaction[] accepted = handler.handleTxs(epoch);
+
+        assertEquals(expected.length, accepted.length);
+        assertEquals(new HashSet<>(this.txHandler.utxoPool.getAllUTXO()),
+                     new HashSet<>(handler.utxoPool.getAllUTXO()));
+    }
+
+    public void testSignatureCache() {
+
+        SignatureCache signatureCache = new SignatureCache(1024);
+        this.txHandler.setSignatureCache(signatureCache);
+
+        Transaction[] epoch = this.buildEpoch();
+        for (Transaction tx : epoch) {
+            this.txHandler.isValidTx(tx);
+        }
+        long misses = signatureCache.getMisses();
+        assertEquals(0, signatureCache.getHits());
+
+        Transaction[] accepted = this.txHandler.handleTxsInBatch(epoch);
+
+        assertEquals(2, accepted.length);
+        assertTrue(signatureCache.getHits() >= misses);
+    }
+
+    public void testHandleTxsInBatch() {
+
+        Transaction[] epoch = this.buildEpoch();
+
+        Transaction[] expected = new TxHandler(this.utxoPool).handleTxs(epoch);
+        Transaction[] accepted = this.txHandler.handleTxsInBatch(epoch);
+
+        assertEquals(expected.length, accepted.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(expected[i], accepted[i]);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package crypto.transaction;
+
+import crypto.shared.Crypto;
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.Random;
+
+public class UTXOPoolTest extends TestCase {
+
+    /** Used for generating random values */
+    private final Random random = new Random(42);
+
+    /**
+     * The address index follows additions, replacements and removals, also in copies of the pool
+     */
+    public void testAddressIndex() {
+
+        List<KeyPair> keyPairs = Crypto.generateDeterministicKeyPairs(2, Crypto.getSignatureScheme(), 2);
+        PublicKey alice = keyPairs.get(0).getPublic();
+        PublicKey bob = keyPairs.get(1).getPublic();
+
+        UTXOPool pool = new UTXOPool();
+        UTXO first = TestUTXOs.generateRandomUTXO(this.random);
+        pool.addUTXO(first, new TransactionOutput(10, alice));
+
+        try {
+            pool.getBalance(alice);
+            fail("Addresses are not indexed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        pool.indexAddresses();
+        UTXO second = TestUTXOs.generateRandomUTXO(this.random);
+        UTXO third = TestUTXOs.generateRandomUTXO(this.random);
+        pool.addUTXO(second, new TransactionOutput(20, alice));
+        pool.addUTXO(third, new TransactionOutput(5, bob));
+
+        assertEquals(30, pool.getBalance(alice));
+        assertEquals(2, pool.getUTXOs(alice).size());
+        assertTrue(pool.getUTXOs(alice).contains(first));
+        assertEquals(5, pool.getBalance(bob));
+
+        // Replacing an output moves it to the new address
+        pool.addUTXO(second, new TransactionOutput(7, bob));
+        assertEquals(10, pool.getBalance(alice));
+        assertEquals(12, pool.getBalance(bob));
+
+        UTXOPool copy = pool.copy();
+        pool.removeUTXO(new UTXO(first.getTxHash(), first.getIndex()));
+        pool.removeUTXO(first);
+
+        assertEquals(0, pool.getBalance(alice));
+        assertTrue(pool.getUTXOs(alice).isEmpty());
+        assertEquals(10, copy.getBalance(alice));
+        assertEquals(2, copy.getUTXOs(bob).size());
+    }
+}
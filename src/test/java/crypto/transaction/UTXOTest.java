@@ -0,0 +1,73 @@
+package crypto.transaction;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Random;
+
+public class UTXOTest extends TestCase {
+
+    /** Used for generating random values */
+    private final Random random = new Random(42);
+
+    /**
+     * A probe equals the UTXO it points at and finds it in every backend
+     */
+    public void testProbeLookup() {
+
+        byte[] txHash = new byte[32];
+        this.random.nextBytes(txHash);
+        UTXO utxo = new UTXO(txHash, 3);
+        TransactionOutput output = new TransactionOutput(7, null);
+
+        UTXO.Probe probe = new UTXO.Probe().wrap(txHash, 3);
+        assertEquals(utxo, probe);
+        assertEquals(probe, utxo);
+        assertEquals(utxo.hashCode(), probe.hashCode());
+        assertFalse(utxo.equals(new UTXO(txHash, 2)));
+
+        for (UTXOStore pool : new UTXOStore[] {new UTXOPool(), new PersistentUTXOPool(), new OffHeapUTXOPool()}) {
+
+            pool.addUTXO(utxo, output);
+            assertEquals(7, pool.getTxOutput(probe).value);
+            assertFalse(pool.contains(probe.wrap(txHash, 2)));
+
+            pool.removeUTXO(probe.wrap(txHash, 3));
+            assertEquals(0, pool.size());
+        }
+    }
+
+    /**
+     * UTXOs own a copy of the hash, probes do not
+     */
+    public void testCopying() {
+
+        byte[] txHash = new byte[32];
+        UTXO utxo = new UTXO(txHash, 0);
+        UTXO.Probe probe = new UTXO.Probe().wrap(txHash, 0);
+
+        txHash[0] = 1;
+        assertEquals(0, utxo.getTxHash()[0]);
+        assertSame(txHash, probe.getTxHash());
+    }
+
+    /**
+     * All bytes of the transaction hash enter the hash code, not only a prefix
+     */
+    public void testHashCodeCoversAllBytes() {
+
+        byte[] txHash = new byte[32];
+        this.random.nextBytes(txHash);
+        UTXO utxo = new UTXO(txHash, 0);
+
+        HashSet<Integer> hashCodes = new HashSet<>();
+        for (int i = 0; i < txHash.length; i++) {
+
+            byte[] changed = txHash.clone();
+            changed[i] ^= 1;
+            hashCodes.add(new UTXO(changed, 0).hashCode());
+        }
+        assertFalse(hashCodes.contains(utxo.hashCode()));
+        assertEquals(txHash.length, hashCodes.size());
+    }
+}